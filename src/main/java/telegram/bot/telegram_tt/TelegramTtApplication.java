@@ -2,8 +2,10 @@ package telegram.bot.telegram_tt;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class TelegramTtApplication {
 
 	public static void main(String[] args) {
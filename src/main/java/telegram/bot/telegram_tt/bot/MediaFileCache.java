@@ -0,0 +1,79 @@
+package telegram.bot.telegram_tt.bot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the file_id Telegram assigns to local images after their first upload,
+ * so the same image can be sent again by reference instead of uploading the file every time.
+ */
+@Component
+@Slf4j
+public class MediaFileCache {
+
+    private final Map<String, String> fileIds = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the album entry for a local image: a reference to the cached file_id if there is one,
+     * otherwise a new upload of the file.
+     *
+     * @param path     path of the local image
+     * @param useCache whether a cached file_id may be used
+     * @return photo to put into a media group
+     */
+    public InputMedia photo(String path, boolean useCache) {
+        String fileId = useCache ? fileIds.get(path) : null;
+        if (fileId != null) {
+            return new InputMediaPhoto(fileId);
+        }
+        File file = new File(path);
+        InputMediaPhoto photo = new InputMediaPhoto();
+        photo.setMedia(file, file.getName());
+        return photo;
+    }
+
+    /**
+     * Checks if all images are available by file_id.
+     *
+     * @param paths paths of the local images
+     * @return true if no image has to be uploaded
+     */
+    public boolean containsAll(List<String> paths) {
+        return paths.stream().allMatch(fileIds::containsKey);
+    }
+
+    /**
+     * Stores the file_ids of sent images. Telegram returns one message per album entry, in the order they were sent.
+     *
+     * @param paths    paths of the local images
+     * @param messages messages returned by Telegram
+     */
+    public void remember(List<String> paths, List<Message> messages) {
+        for (int i = 0; i < paths.size() && i < messages.size(); i++) {
+            List<PhotoSize> sizes = messages.get(i).getPhoto();
+            if (sizes != null && !sizes.isEmpty()) {
+                // The last size is the original resolution
+                fileIds.put(paths.get(i), sizes.get(sizes.size() - 1).getFileId());
+            }
+        }
+    }
+
+    /**
+     * Forgets the file_ids of the images, so they are uploaded again next time.
+     *
+     * @param paths paths of the local images
+     */
+    public void invalidate(List<String> paths) {
+        paths.forEach(fileIds::remove);
+        log.info("Cached file_ids were rejected, images will be uploaded again: {}", paths);
+    }
+}
@@ -0,0 +1,378 @@
+package telegram.bot.telegram_tt.bot;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.PartialBotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound queue for everything the bot sends to Telegram.
+ *
+ * Handlers only enqueue methods and get a future back, they never wait for the network.
+ * A single scheduler thread takes queued methods in round-robin order over the chats and sends them
+ * with executeAsync, respecting a global and a per-chat token bucket (Telegram allows about 30 messages
+ * per second overall and 1 message per second per chat). Methods of one chat are sent one at a time
+ * and in order. When Telegram answers 429, the chat is paused for the retry_after period and the method
+ * is sent again. Consecutive plain text messages waiting for the same chat are merged into one message,
+ * unless they were queued as not mergeable.
+ */
+@Component
+@Slf4j
+public class OutboundScheduler {
+
+    /**
+     * Maximum length of a Telegram text message.
+     */
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private static final String MERGE_SEPARATOR = "\n\n";
+
+    private final TokenBucket globalBucket;
+    private final double chatRate;
+    private final double chatBurst;
+    private final int maxAttempts;
+    private final boolean coalesce;
+    private final Map<Long, ChatOutbox> outboxes = new ConcurrentHashMap<>();
+    private final Queue<ChatOutbox> rotation = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService ticker;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile AbsSender sender;
+
+    /**
+     * @param globalRate  messages per second sent to all chats together
+     * @param chatRate    messages per second sent to a single chat
+     * @param chatBurst   number of messages a chat may receive at once before the chat rate applies
+     * @param maxAttempts how many times a method is sent when Telegram asks to retry later
+     * @param coalesce    whether consecutive text messages to the same chat are merged
+     * @param tickMillis  how often the queue is checked for methods ready to be sent
+     */
+    public OutboundScheduler(@Value("${bot.outbound.global-rate:30}") double globalRate,
+                             @Value("${bot.outbound.chat-rate:1}") double chatRate,
+                             @Value("${bot.outbound.chat-burst:3}") double chatBurst,
+                             @Value("${bot.outbound.max-attempts:3}") int maxAttempts,
+                             @Value("${bot.outbound.coalesce:true}") boolean coalesce,
+                             @Value("${bot.outbound.tick-ms:20}") long tickMillis) {
+        this.globalBucket = new TokenBucket(globalRate, globalRate, System.nanoTime());
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.maxAttempts = maxAttempts;
+        this.coalesce = coalesce;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbound-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the bot used to send queued methods. Nothing is sent before this is called.
+     *
+     * @param sender bot sending the methods
+     */
+    public void start(AbsSender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Queues a text message. If the previous text message for the chat is still waiting,
+     * the text is appended to it and both callers get the future of the merged message.
+     *
+     * @param chatId chat ID
+     * @param text   message text
+     * @return future completed with the sent message
+     */
+    public CompletableFuture<Message> sendText(long chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(String.valueOf(chatId));
+        message.setText(text);
+        return submit(chatId, message);
+    }
+
+    /**
+     * Queues any method for sending to a chat.
+     *
+     * @param chatId chat ID, used for ordering and the per-chat limit
+     * @param method method to send
+     * @return future completed with the Telegram response
+     */
+    public <T extends Serializable> CompletableFuture<T> submit(long chatId, PartialBotApiMethod<T> method) {
+        return submit(chatId, method, true);
+    }
+
+    /**
+     * Queues any method for sending to a chat.
+     *
+     * @param chatId    chat ID, used for ordering and the per-chat limit
+     * @param method    method to send
+     * @param mergeable whether a text message may be merged with the text messages waiting next to it;
+     *                  false when the caller needs the sent message to hold only its own text, e.g. to edit it later
+     * @return future completed with the Telegram response
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Serializable> CompletableFuture<T> submit(long chatId, PartialBotApiMethod<T> method,
+                                                                boolean mergeable) {
+        Outgoing[] queued = new Outgoing[1];
+        outboxes.compute(chatId, (id, outbox) -> {
+            if (outbox == null) {
+                outbox = new ChatOutbox(new TokenBucket(chatRate, chatBurst, System.nanoTime()));
+            }
+            synchronized (outbox) {
+                queued[0] = outbox.offer(method, mergeable);
+                if (!outbox.listed) {
+                    outbox.listed = true;
+                    rotation.add(outbox);
+                }
+            }
+            return outbox;
+        });
+        return (CompletableFuture<T>) (CompletableFuture<?>) queued[0].result;
+    }
+
+    /**
+     * Sends every chat at most one queued method if both the chat and the global limits allow it.
+     * Runs on the scheduler thread only.
+     */
+    private void tick() {
+        if (sender == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int chats = rotation.size();
+        for (int i = 0; i < chats; i++) {
+            ChatOutbox outbox = rotation.poll();
+            if (outbox == null) {
+                return;
+            }
+            Outgoing next;
+            synchronized (outbox) {
+                if (outbox.queue.isEmpty() && !outbox.inFlight) {
+                    outbox.listed = false;
+                    continue;
+                }
+                if (outbox.inFlight || outbox.queue.isEmpty() || now < outbox.pausedUntil || !outbox.bucket.available(now)) {
+                    rotation.add(outbox);
+                    continue;
+                }
+                if (!globalBucket.tryAcquire(now)) {
+                    rotation.add(outbox);
+                    return;
+                }
+                outbox.bucket.tryAcquire(now);
+                next = outbox.queue.poll();
+                outbox.inFlight = true;
+                rotation.add(outbox);
+            }
+            send(outbox, next);
+        }
+        for (Long chatId : outboxes.keySet()) {
+            outboxes.computeIfPresent(chatId, (id, outbox) -> outbox.isIdle(now) ? null : outbox);
+        }
+    }
+
+    private void send(ChatOutbox outbox, Outgoing outgoing) {
+        outgoing.attempts++;
+        CompletableFuture<?> response;
+        try {
+            response = execute(outgoing.method);
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((result, error) -> onResponse(outbox, outgoing, result, error));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<?> execute(PartialBotApiMethod<?> method) throws Exception {
+        if (method instanceof SendDocument sendDocument) {
+            return sender.executeAsync(sendDocument);
+        }
+        if (method instanceof SendPhoto sendPhoto) {
+            return sender.executeAsync(sendPhoto);
+        }
+        if (method instanceof SendMediaGroup sendMediaGroup) {
+            return sender.executeAsync(sendMediaGroup);
+        }
+        if (method instanceof BotApiMethod<?> botApiMethod) {
+            return sender.executeAsync((BotApiMethod<Serializable>) botApiMethod);
+        }
+        throw new IllegalArgumentException("Unsupported method: " + method.getClass().getSimpleName());
+    }
+
+    private void onResponse(ChatOutbox outbox, Outgoing outgoing, Object result, Throwable error) {
+        if (error == null) {
+            sent.incrementAndGet();
+            synchronized (outbox) {
+                outbox.inFlight = false;
+            }
+            outgoing.result.complete(result);
+            return;
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Integer retryAfter = retryAfterOf(cause);
+        synchronized (outbox) {
+            outbox.inFlight = false;
+            if (retryAfter != null && outgoing.attempts < maxAttempts) {
+                retried.incrementAndGet();
+                outbox.pausedUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+                outbox.queue.addFirst(outgoing);
+                log.warn("Telegram asked to retry after {} s, pausing the chat", retryAfter);
+                return;
+            }
+        }
+        failed.incrementAndGet();
+        log.error("Error sending {}: ", outgoing.method.getClass().getSimpleName(), cause);
+        outgoing.result.completeExceptionally(cause);
+    }
+
+    private static Integer retryAfterOf(Throwable error) {
+        if (error instanceof TelegramApiRequestException requestException && requestException.getParameters() != null) {
+            return requestException.getParameters().getRetryAfter();
+        }
+        return null;
+    }
+
+    /**
+     * Periodically logs how many methods were sent, merged, retried and failed.
+     */
+    @Scheduled(fixedDelayString = "${metrics.log-interval-ms:60000}")
+    public void logMetrics() {
+        if (sent.get() + failed.get() == 0) {
+            return;
+        }
+        log.info("Outbound: sent={}, merged={}, retried={}, failed={}, chatsWaiting={}",
+                sent.get(), merged.get(), retried.get(), failed.get(), rotation.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private static final class Outgoing {
+        private final PartialBotApiMethod<?> method;
+        private final boolean mergeable;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private int attempts;
+
+        private Outgoing(PartialBotApiMethod<?> method, boolean mergeable) {
+            this.method = method;
+            this.mergeable = mergeable;
+        }
+    }
+
+    /**
+     * Queue and rate limit state of one chat. Guarded by its own monitor.
+     */
+    private final class ChatOutbox {
+        private final Deque<Outgoing> queue = new ArrayDeque<>();
+        private final TokenBucket bucket;
+        private long pausedUntil;
+        private boolean inFlight;
+        private boolean listed;
+
+        private ChatOutbox(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        /**
+         * Adds a method to the queue, merging plain text into the last waiting text message when possible.
+         */
+        private Outgoing offer(PartialBotApiMethod<?> method, boolean mergeable) {
+            Outgoing last = queue.peekLast();
+            if (coalesce && mergeable && last != null && last.mergeable && canMerge(last.method, method)) {
+                SendMessage waiting = (SendMessage) last.method;
+                waiting.setText(waiting.getText() + MERGE_SEPARATOR + ((SendMessage) method).getText());
+                merged.incrementAndGet();
+                return last;
+            }
+            Outgoing outgoing = new Outgoing(method, mergeable);
+            queue.addLast(outgoing);
+            return outgoing;
+        }
+
+        private boolean canMerge(PartialBotApiMethod<?> waiting, PartialBotApiMethod<?> next) {
+            return waiting instanceof SendMessage first && next instanceof SendMessage second
+                    && isPlain(first) && isPlain(second)
+                    && first.getText().length() + MERGE_SEPARATOR.length() + second.getText().length() <= MAX_MESSAGE_LENGTH;
+        }
+
+        private boolean isPlain(SendMessage message) {
+            return message.getReplyMarkup() == null && message.getParseMode() == null && message.getText() != null;
+        }
+
+        private boolean isIdle(long now) {
+            synchronized (this) {
+                return queue.isEmpty() && !inFlight && !listed && now >= pausedUntil && bucket.isFull(now);
+            }
+        }
+    }
+
+    /**
+     * Token bucket refilled continuously at a fixed rate. Not thread-safe.
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double ratePerSecond, double capacity, long now) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+            this.refilledAt = now;
+        }
+
+        private boolean available(long now) {
+            refill(now);
+            return tokens >= 1;
+        }
+
+        private boolean tryAcquire(long now) {
+            if (!available(now)) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        private boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -3,26 +3,31 @@ package telegram.bot.telegram_tt.bot;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
-import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.File;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import telegram.bot.telegram_tt.command.*;
 import telegram.bot.telegram_tt.factory.CommandResponseFactory;
 import telegram.bot.telegram_tt.service.CategoryDownloadService;
-import telegram.bot.telegram_tt.service.CategoryUploadService;
+import telegram.bot.telegram_tt.service.UploadStagingService;
+import telegram.bot.telegram_tt.service.UploadStagingService.StagedUpload;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Telegram bot for managing category trees.
@@ -33,27 +38,61 @@ public class TelegramBot extends TelegramLongPollingBot {
 
     private final String botName;
     private final Map<String, Command> commands = new HashMap<>();
+    // Commands that send their own messages while they run
+    private final Map<String, StreamingCommand> streamingCommands = new HashMap<>();
     private final CommandResponseFactory commandResponseFactory;
+    private final UpdateDispatcher updateDispatcher;
+    private final OutboundScheduler outboundScheduler;
+    private final MediaFileCache mediaFileCache;
+    private final UploadStagingService uploadStagingService;
+    private final BrowseCommand browseCommand;
 
     @Value("${images.first}")
     private String PHOTO_PATH;
     @Value("${images.second}")
     private String PHOTO_PATH_1;
-    private final Set<Long> waiting = new HashSet<>();
+    // Chats expected to send a file, with the /upload command that asked for it
+    private final Map<Long, String> waiting = new ConcurrentHashMap<>();
 
-    public TelegramBot(String botName, String token, AddCategoryCommand addCategoryCommand, ViewCategoryCommand viewCategoryCommand, RemoveCategoryCommand removeCategoryCommand, UploadCommand uploadCommand, DownloadCommand downloadCommand, CategoryDownloadService categoryDownloadService, CategoryUploadService categoryUploadService, CommandResponseFactory commandResponseFactory) {
+    public TelegramBot(String botName, String token, AddCategoryCommand addCategoryCommand, ViewCategoryCommand viewCategoryCommand, RemoveCategoryCommand removeCategoryCommand, UploadCommand uploadCommand, DownloadCommand downloadCommand, BrowseCommand browseCommand, SnapshotCommand snapshotCommand, RestoreCommand restoreCommand, CategoryDownloadService categoryDownloadService, CommandResponseFactory commandResponseFactory, UpdateDispatcher updateDispatcher, OutboundScheduler outboundScheduler, MediaFileCache mediaFileCache, UploadStagingService uploadStagingService) {
         super(token);
         this.botName = botName;
         commands.put("/addElement", addCategoryCommand);
-        commands.put("/viewTree", viewCategoryCommand);
+        streamingCommands.put("/viewTree", viewCategoryCommand);
         commands.put("/removeElement", removeCategoryCommand);
         commands.put("/download", downloadCommand);
+        commands.put("/browse", browseCommand);
         commands.put("/upload", uploadCommand);
+        commands.put("/snapshot", snapshotCommand);
+        commands.put("/restore", restoreCommand);
         this.commandResponseFactory = commandResponseFactory;
+        this.updateDispatcher = updateDispatcher;
+        this.outboundScheduler = outboundScheduler;
+        this.mediaFileCache = mediaFileCache;
+        this.uploadStagingService = uploadStagingService;
+        this.browseCommand = browseCommand;
+        outboundScheduler.start(this);
+    }
+
+    /**
+     * Hands received updates over to the dispatcher instead of processing them on the polling thread.
+     * Updates of one chat are still processed in order, see {@link UpdateDispatcher}.
+     *
+     * @param updates updates received from Telegram
+     */
+    @Override
+    public void onUpdatesReceived(List<Update> updates) {
+        for (Update update : updates) {
+            updateDispatcher.dispatch(update, this::onUpdateReceived);
+        }
     }
 
     @Override
     public void onUpdateReceived(Update update) {
+        if (update.hasCallbackQuery()) {
+            handleCallbackQuery(update.getCallbackQuery());
+            return;
+        }
         if (update.hasMessage()) {
             Message message = update.getMessage();
             long chatId = message.getChatId();
@@ -64,43 +103,61 @@ public class TelegramBot extends TelegramLongPollingBot {
                     response = commandResponseFactory.createResponse(messageText);
                 } else if (messageText.equals("/start")) {
                     response = commandResponseFactory.createResponse(messageText);
-                } else if (messageText.equals("/upload")) {
-                    response = commandResponseFactory.createResponse(messageText);
-                    waiting.add(chatId); // Wait for the user to upload a file
+                } else if (messageText.equals("/upload") || messageText.startsWith("/upload ")) {
+                    Object error = commands.get("/upload").execute(messageText, chatId);
+                    if (error != null) {
+                        response = error.toString();
+                    } else {
+                        waiting.put(chatId, messageText); // Wait for the user to upload a file
+                        sendUploadInstructions(chatId, commandResponseFactory.createResponse("/upload"));
+                        return;
+                    }
                 } else {
                     // Processing other commands
                     Object responseObject = handleCommand(messageText, chatId);
-                    if (responseObject instanceof SendDocument) {
-                        try {
-                            execute((SendDocument) responseObject);
-                            return;
-                        } catch (TelegramApiException e) {
-                            log.error("Error sending document: ", e);
-                            response = "Error sending document. Try again.";
-                        }
+                    if (responseObject == null) {
+                        // A streaming command has already queued its messages
+                        return;
+                    }
+                    if (responseObject instanceof DocumentResponse) {
+                        sendDocument(chatId, (DocumentResponse) responseObject);
+                        return;
+                    } else if (responseObject instanceof SendMessage) {
+                        outboundScheduler.submit(chatId, (SendMessage) responseObject);
+                        return;
                     } else {
                         response = (String) responseObject;
                     }
                 }
                 sendMessage(chatId, response);
-            } else if (update.getMessage().hasDocument() && waiting.contains(chatId)) {
-                waiting.remove(chatId); // Remove the user from the waiting list
+            } else if (update.getMessage().hasDocument() && waiting.containsKey(chatId)) {
+                String uploadCommandText = waiting.remove(chatId); // Remove the user from the waiting list
+                if (!uploadStagingService.isAllowedSize(message.getDocument().getFileSize())) {
+                    sendMessage(chatId, "Error: The file is too large.");
+                    return;
+                }
                 String fileId = message.getDocument().getFileId();
                 GetFile getFileMethod = new GetFile(fileId);
                 try {
                     File file = execute(getFileMethod);
                     if (checkUploadFileFormat(file.getFilePath())) {
-                        InputStream inputStream = downloadFileAsStream(file);
                         Command uploadCommand = commands.get("/upload");
                         if (uploadCommand instanceof FileCommand) {
-                            String response = ((FileCommand) uploadCommand).executeFile(inputStream, chatId);
-                            inputStream.close();
-                            sendMessage(chatId, response);
+                            // Stage the download on disk so the file can be opened with random access; its hash is computed on the way
+                            String response;
+                            try (InputStream inputStream = downloadFileAsStream(file);
+                                 StagedUpload stagedUpload = uploadStagingService.stage(inputStream, fileSuffix(file.getFilePath()))) {
+                                response = ((FileCommand) uploadCommand).executeFile(stagedUpload, uploadCommandText, chatId);
+                            }
+                            // A queued import reports through its own status message
+                            if (response != null) {
+                                sendMessage(chatId, response);
+                            }
                         } else {
                             sendMessage(chatId, "The boot command is not configured correctly.");
                         }
                     } else {
-                        sendMessage(chatId, "Error: Please upload a file in Excel format (.xls or .xlsx).");
+                        sendMessage(chatId, "Error: Please upload a file in Excel format (.xls or .xlsx) or as CSV or TSV (.csv or .tsv).");
                     }
 
                 } catch (TelegramApiException | IOException e) {
@@ -113,8 +170,40 @@ public class TelegramBot extends TelegramLongPollingBot {
         }
     }
 
+    /**
+     * Handles a press of an inline keyboard button.
+     * The browse message is edited through the outbound queue; the query itself is answered right away,
+     * so the button stops showing its loading state.
+     *
+     * @param callbackQuery callback query from Telegram
+     */
+    private void handleCallbackQuery(CallbackQuery callbackQuery) {
+        if (BrowseCommand.isNavigation(callbackQuery.getData()) && callbackQuery.getMessage() != null) {
+            long chatId = callbackQuery.getMessage().getChatId();
+            try {
+                outboundScheduler.submit(chatId, browseCommand.navigate(callbackQuery)).exceptionally(e -> {
+                    // Pressing the button of the page that is already shown leaves the message unchanged
+                    log.debug("Could not update browse message in chat {}: {}", chatId, e.getMessage());
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                log.error("Error handling callback query {}", callbackQuery.getData(), e);
+            }
+        }
+        try {
+            executeAsync(new AnswerCallbackQuery(callbackQuery.getId()));
+        } catch (TelegramApiException e) {
+            log.warn("Could not answer callback query {}", callbackQuery.getId(), e);
+        }
+    }
+
+    private String fileSuffix(String filePath) {
+        return filePath.substring(filePath.lastIndexOf('.'));
+    }
+
     private boolean checkUploadFileFormat(String filePath) {
-        if (filePath != null && (filePath.endsWith(".xls") || filePath.endsWith(".xlsx"))) {
+        if (filePath != null && (filePath.endsWith(".xls") || filePath.endsWith(".xlsx")
+                || filePath.endsWith(".csv") || filePath.endsWith(".tsv"))) {
             return true;
         }
         return false;
@@ -124,18 +213,31 @@ public class TelegramBot extends TelegramLongPollingBot {
     /**
      * Processes an incoming command based on the command map.
      *
+     * Streaming commands queue their messages while they run.
+     *
      * @param messageText command text
      * @param chatId chat ID
-     * @return response message
+     * @return response message, or null if the command has sent its response itself
      */
     private Object handleCommand(String messageText, Long chatId) {
+        for (String commandKey : streamingCommands.keySet()) {
+            if (messageText.startsWith(commandKey)) {
+                try {
+                    streamingCommands.get(commandKey).executeStreaming(messageText, chatId, text -> sendMessage(chatId, text));
+                    return null;
+                } catch (Exception e) {
+                    log.error("Error executing command: ", e);
+                    return "Error executing command. Try again.";
+                }
+            }
+        }
         for (String commandKey : commands.keySet()) {
             if (messageText.startsWith(commandKey)) {
                 try {
-                    Object forReturn = commands.get(commandKey).execute(messageText, chatId);
-                    if (forReturn instanceof SendDocument) {
-                        SendDocument sendDocument = (SendDocument) forReturn;
-                        return sendDocument;
+                    Command command = commands.get(commandKey);
+                    Object forReturn = command.execute(messageText, chatId);
+                    if (forReturn instanceof DocumentResponse || forReturn instanceof SendMessage) {
+                        return forReturn;
                     }
                     return forReturn.toString();
                 } catch (Exception e) {
@@ -150,36 +252,80 @@ public class TelegramBot extends TelegramLongPollingBot {
 
 
     /**
-     * Sends a message to a specific chat.
+     * Queues a message to a specific chat. The message is sent asynchronously by the {@link OutboundScheduler}.
      *
      * @param chatId chat ID
      * @param text message text
      */
     private void sendMessage(long chatId, String text) {
-        SendMessage message = new SendMessage();
-        message.setChatId(String.valueOf(chatId));
-        message.setText(text);
-        try {
-            if (text.equals(commandResponseFactory.createResponse("/upload"))) {
-                sendPhoto(chatId, PHOTO_PATH);
-                sendPhoto(chatId, PHOTO_PATH_1);
-            }
-            execute(message); // Sending a message
-        } catch (TelegramApiException e) {
-            log.error("Error sending message: ", e);
-            // If there is an error sending the message, send the text with the error to the user
-            sendMessage(chatId, "There was an error sending your message. Try again later.");
+        outboundScheduler.sendText(chatId, text);
+    }
+
+    /**
+     * Sends the example images as one album followed by the upload instructions.
+     *
+     * @param chatId chat ID
+     * @param text upload instructions
+     */
+    private void sendUploadInstructions(long chatId, String text) {
+        sendExampleImages(chatId, true).whenComplete((messages, e) -> sendMessage(chatId, text));
+    }
+
+    /**
+     * Sends the example images as one album. Images sent before are referenced by their cached file_id;
+     * if Telegram rejects a cached file_id, the images are uploaded again.
+     *
+     * @param chatId chat ID
+     * @param useCache whether cached file_ids may be used
+     * @return future completed with the album messages
+     */
+    private CompletableFuture<List<Message>> sendExampleImages(long chatId, boolean useCache) {
+        List<String> paths = List.of(PHOTO_PATH, PHOTO_PATH_1);
+        boolean cached = useCache && mediaFileCache.containsAll(paths);
+        List<InputMedia> photos = paths.stream().map(path -> mediaFileCache.photo(path, useCache)).toList();
+        SendMediaGroup album = new SendMediaGroup(String.valueOf(chatId), photos);
+        CompletableFuture<List<Message>> sent = outboundScheduler.submit(chatId, album).thenApply(messages -> {
+            mediaFileCache.remember(paths, messages);
+            return messages;
+        });
+        if (!cached) {
+            return sent;
         }
+        return sent.exceptionallyCompose(e -> {
+            mediaFileCache.invalidate(paths);
+            return sendExampleImages(chatId, false);
+        });
     }
-    private void sendPhoto(long chatId, String photoPath) {
-        SendPhoto sendPhoto = new SendPhoto();
-        sendPhoto.setChatId(chatId);
-        sendPhoto.setPhoto(new InputFile(new java.io.File(photoPath)));
+
+    /**
+     * Queues a document and tells the user if it could not be delivered.
+     * The temporary file of the document is deleted once the document is sent.
+     *
+     * @param chatId chat ID
+     * @param documentResponse document to send
+     */
+    private void sendDocument(long chatId, DocumentResponse documentResponse) {
+        outboundScheduler.submit(chatId, documentResponse.sendDocument()).whenComplete((sent, e) -> {
+            deleteTempFile(documentResponse.tempFile());
+            if (e != null) {
+                if (documentResponse.onFailed() != null) {
+                    documentResponse.onFailed().run();
+                }
+                sendMessage(chatId, "Error sending document. Try again.");
+            } else if (documentResponse.onSent() != null) {
+                documentResponse.onSent().accept(sent);
+            }
+        });
+    }
+
+    private void deleteTempFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
         try {
-            execute(sendPhoto);
-        } catch (TelegramApiException e) {
-            log.error("Error sending photo: ", e);
-            throw new RuntimeException("Error sending photo.");
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary file {}", tempFile, e);
         }
     }
 
@@ -0,0 +1,42 @@
+package telegram.bot.telegram_tt.bot;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import telegram.bot.telegram_tt.service.ImportStatusNotifier;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends and edits import status messages through the {@link OutboundScheduler}.
+ * Status messages are queued as not mergeable, so the scheduler never merges them with other text replies
+ * and the job always gets the ID of its own message.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TelegramImportStatusNotifier implements ImportStatusNotifier {
+
+    private final OutboundScheduler outboundScheduler;
+
+    @Override
+    public CompletableFuture<Integer> send(Long chatId, String text) {
+        SendMessage message = new SendMessage(String.valueOf(chatId), text);
+        return outboundScheduler.submit(chatId, message, false).thenApply(Message::getMessageId);
+    }
+
+    @Override
+    public void edit(Long chatId, int messageId, String text) {
+        EditMessageText edit = new EditMessageText(text);
+        edit.setChatId(String.valueOf(chatId));
+        edit.setMessageId(messageId);
+        outboundScheduler.submit(chatId, edit).exceptionally(e -> {
+            // The message may have been deleted by the user; the job goes on regardless
+            log.debug("Could not update import status in chat {}: {}", chatId, e.getMessage());
+            return null;
+        });
+    }
+}
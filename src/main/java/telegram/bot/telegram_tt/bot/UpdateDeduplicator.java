@@ -0,0 +1,49 @@
+package telegram.bot.telegram_tt.bot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the IDs of recently received updates.
+ * Telegram re-delivers a webhook update when it did not get an answer in time,
+ * so the same update can arrive more than once.
+ */
+@Component
+public class UpdateDeduplicator {
+
+    private final Map<Integer, Boolean> recentIds;
+
+    /**
+     * @param capacity number of most recent update IDs to remember
+     */
+    public UpdateDeduplicator(@Value("${bot.webhook.dedup-capacity:10000}") int capacity) {
+        this.recentIds = new LinkedHashMap<>(capacity, 0.75f) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Registers an update ID.
+     *
+     * @param updateId update ID
+     * @return true if the update is seen for the first time, false if it is a repeated delivery
+     */
+    public synchronized boolean firstSeen(Integer updateId) {
+        return recentIds.putIfAbsent(updateId, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Forgets an update ID, so a later delivery of the same update is processed again.
+     *
+     * @param updateId update ID
+     */
+    public synchronized void forget(Integer updateId) {
+        recentIds.remove(updateId);
+    }
+}
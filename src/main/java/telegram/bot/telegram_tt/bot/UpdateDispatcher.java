@@ -0,0 +1,285 @@
+package telegram.bot.telegram_tt.bot;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches incoming updates to a bounded worker pool.
+ * Updates are keyed by chat ID: updates of the same chat are handled one by one in arrival order,
+ * while updates of different chats are handled concurrently.
+ */
+@Component
+@Slf4j
+public class UpdateDispatcher {
+
+    /**
+     * Maximum number of updates a worker handles for one chat before giving other chats a turn.
+     */
+    private static final int DRAIN_BATCH = 16;
+
+    private final ThreadPoolExecutor workers;
+    private final Semaphore capacity;
+    private final int queueCapacity;
+    private final Map<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalHandleNanos = new AtomicLong();
+    private final AtomicLong maxHandleNanos = new AtomicLong();
+
+    /**
+     * @param concurrency   number of worker threads, i.e. how many chats are handled at the same time
+     * @param queueCapacity maximum number of updates accepted but not yet handled
+     */
+    public UpdateDispatcher(@Value("${bot.dispatcher.concurrency:8}") int concurrency,
+                            @Value("${bot.dispatcher.queue-capacity:1000}") int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.capacity = new Semaphore(queueCapacity);
+        this.workers = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new WorkerThreadFactory());
+        log.info("Update dispatcher started with {} workers and queue capacity {}", concurrency, queueCapacity);
+    }
+
+    /**
+     * Queues an update for processing.
+     * Blocks the caller while the queue is full, so the long-polling thread stops fetching new updates
+     * until the workers catch up.
+     *
+     * @param update  incoming update
+     * @param handler handler invoked on a worker thread
+     */
+    public void dispatch(Update update, Consumer<Update> handler) {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for dispatcher capacity, update {} is dropped", update.getUpdateId());
+            return;
+        }
+        enqueue(update, handler);
+    }
+
+    /**
+     * Queues an update for processing if there is room for it within the given time.
+     * Used by the webhook endpoint, which must answer Telegram quickly instead of waiting for the workers.
+     *
+     * @param update  incoming update
+     * @param handler handler invoked on a worker thread
+     * @param timeout maximum time to wait for a free slot, in milliseconds
+     * @return true if the update was queued, false if the queue stayed full
+     */
+    public boolean tryDispatch(Update update, Consumer<Update> handler, long timeout) {
+        try {
+            if (!capacity.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.incrementAndGet();
+            return false;
+        }
+        enqueue(update, handler);
+        return true;
+    }
+
+    private void enqueue(Update update, Consumer<Update> handler) {
+        submitted.incrementAndGet();
+        Task task = new Task(update, handler, System.nanoTime());
+        try {
+            lanes.compute(chatIdOf(update), (chatId, lane) -> {
+                if (lane == null) {
+                    lane = new ChatLane(chatId);
+                }
+                lane.pending.add(task);
+                if (!lane.scheduled) {
+                    lane.scheduled = true;
+                    ChatLane scheduledLane = lane;
+                    workers.execute(() -> drain(scheduledLane));
+                }
+                return lane;
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down: compute left the map unchanged, so only this update is dropped
+            rejected.incrementAndGet();
+            capacity.release();
+            log.warn("Update dispatcher is shut down, update {} is dropped", update.getUpdateId());
+        }
+    }
+
+    /**
+     * Handles queued updates of one chat. After {@link #DRAIN_BATCH} updates the lane is put back
+     * at the end of the worker queue so a busy chat cannot starve the others.
+     */
+    private void drain(ChatLane lane) {
+        for (int handled = 0; handled < DRAIN_BATCH; handled++) {
+            Task task = pollOrRelease(lane);
+            if (task == null) {
+                return;
+            }
+            run(task);
+        }
+        try {
+            workers.execute(() -> drain(lane));
+        } catch (RejectedExecutionException e) {
+            drop(lane);
+        }
+    }
+
+    /**
+     * Removes a lane that can no longer be scheduled because the workers are shut down, and releases the
+     * capacity of its queued updates. The lane is not scheduled anywhere else, so its queue is only read here.
+     */
+    private void drop(ChatLane lane) {
+        lanes.remove(lane.chatId, lane);
+        int dropped = lane.pending.size();
+        lane.pending.clear();
+        rejected.addAndGet(dropped);
+        capacity.release(dropped);
+        log.warn("Update dispatcher is shut down, {} updates of chat {} are dropped", dropped, lane.chatId);
+    }
+
+    /**
+     * Takes the next update of the lane, or removes the lane when it has nothing left to do.
+     * Both happen under the map lock so a concurrent {@link #enqueue} either sees the lane scheduled
+     * or creates a new one.
+     */
+    private Task pollOrRelease(ChatLane lane) {
+        Task[] next = new Task[1];
+        lanes.computeIfPresent(lane.chatId, (chatId, current) -> {
+            next[0] = current.pending.poll();
+            return next[0] == null ? null : current;
+        });
+        return next[0];
+    }
+
+    private void run(Task task) {
+        long startedAt = System.nanoTime();
+        record(startedAt - task.queuedAt, totalWaitNanos, maxWaitNanos);
+        try {
+            task.handler.accept(task.update);
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Error handling update {}", task.update.getUpdateId(), e);
+        } finally {
+            record(System.nanoTime() - startedAt, totalHandleNanos, maxHandleNanos);
+            capacity.release();
+        }
+    }
+
+    private static void record(long nanos, AtomicLong total, AtomicLong max) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the chat an update belongs to. Updates without a chat share one lane.
+     */
+    static long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        return 0L;
+    }
+
+    /**
+     * Number of updates accepted but not yet handled.
+     */
+    public int getQueuedUpdates() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    /**
+     * Number of chats that currently have updates queued or in progress.
+     */
+    public int getActiveChats() {
+        return lanes.size();
+    }
+
+    /**
+     * Periodically logs queue and latency metrics, used to size the worker pool and the queue.
+     * Maximums are reset after each report.
+     */
+    @Scheduled(fixedDelayString = "${metrics.log-interval-ms:60000}")
+    public void logMetrics() {
+        long done = completed.get() + failed.get();
+        if (done == 0) {
+            return;
+        }
+        log.info("Dispatcher: submitted={}, completed={}, failed={}, rejected={}, queued={}, activeChats={}, busyWorkers={}, "
+                        + "avgWaitMs={}, maxWaitMs={}, avgHandleMs={}, maxHandleMs={}",
+                submitted.get(), completed.get(), failed.get(), rejected.get(), getQueuedUpdates(), getActiveChats(),
+                workers.getActiveCount(),
+                toMillis(totalWaitNanos.get() / done), toMillis(maxWaitNanos.getAndSet(0)),
+                toMillis(totalHandleNanos.get() / done), toMillis(maxHandleNanos.getAndSet(0)));
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Update dispatcher did not finish in time, {} updates are dropped", getQueuedUpdates());
+            workers.shutdownNow();
+        }
+    }
+
+    private record Task(Update update, Consumer<Update> handler, long queuedAt) {
+    }
+
+    /**
+     * Queue of updates of a single chat. Guarded by the lock of the {@link #lanes} map entry.
+     */
+    private static final class ChatLane {
+        private final long chatId;
+        private final Queue<Task> pending = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private ChatLane(long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "update-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
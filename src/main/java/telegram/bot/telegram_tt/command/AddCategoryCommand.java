@@ -4,7 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import telegram.bot.telegram_tt.facade.CategoryFacade;
-import telegram.bot.telegram_tt.service.CategoryService;
+import telegram.bot.telegram_tt.service.ParentCategory;
+import telegram.bot.telegram_tt.service.ParentCategoryResolver.ParentMatch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Command to add a category, either as root or as a child of an existing parent.
@@ -34,13 +39,15 @@ public class AddCategoryCommand implements Command {
             return categoryFacade.addRootCategory(root, chatId);
 
         } else if (args.length >= 3) {
-            String parent = extractParent(args, chatId);
-            if (parent == null) {
+            List<String> words = Arrays.asList(args).subList(1, args.length);
+            Optional<ParentMatch> match = categoryFacade.resolveParent(words, chatId);
+            if (match.isEmpty()) {
                 log.warn("Parent category does not exist for chat ID: {}", chatId);
                 return "Parent category does not exist.";
             }
-            String child = extractChild(args);
-            log.info("Child category '{}' added successfully under parent '{}' for chat ID: {}", child, parent, chatId);
+            ParentCategory parent = match.get().parent();
+            String child = extractChild(words, match.get().wordCount());
+            log.info("Child category '{}' added successfully under parent '{}' for chat ID: {}", child, parent.name(), chatId);
             return categoryFacade.addChildCategory(parent, child, chatId);
         } else {
             log.error("Invalid command format for chat ID: {}. Command: {}", chatId, command);
@@ -48,37 +55,15 @@ public class AddCategoryCommand implements Command {
         }
     }
 
-    /**
-     * Extracts the parent category from the command arguments.
-     *
-     * @param args command arguments
-     * @param chatId the chat identifier
-     * @return the parent category if it exists, otherwise null
-     */
-    private String extractParent(String[] args, Long chatId) {
-        StringBuilder parentBuilder = new StringBuilder();
-        for (int i = 1; i < args.length; i++) {
-            parentBuilder.append(args[i]).append(" ");
-            if (categoryFacade.categoryExists(parentBuilder.toString().trim(), chatId)) {
-                return parentBuilder.toString().trim();
-            }
-        }
-        log.warn("Parent category not found in the arguments for chat ID: {}", chatId);
-        return null;
-    }
-
     /**
      * Extracts the child category from the command arguments.
      *
-     * @param args command arguments
+     * @param words command arguments after the command
+     * @param parentWordCount number of leading words taken by the parent name
      * @return the child category as a string
      */
-    private String extractChild(String[] args) {
-        StringBuilder childBuilder = new StringBuilder();
-        for (int i = 2; i < args.length; i++) {
-            childBuilder.append(args[i]).append(" ");
-        }
-        String child = childBuilder.toString().trim();
+    private String extractChild(List<String> words, int parentWordCount) {
+        String child = String.join(" ", words.subList(parentWordCount, words.size())).trim();
         log.debug("Extracted child category: {}", child);
         return child;
     }
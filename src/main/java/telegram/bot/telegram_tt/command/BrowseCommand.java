@@ -0,0 +1,125 @@
+package telegram.bot.telegram_tt.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import telegram.bot.telegram_tt.facade.CategoryFacade;
+import telegram.bot.telegram_tt.repository.CategoryNavigationRepository.CategoryEntry;
+import telegram.bot.telegram_tt.repository.CategoryNavigationRepository.ChildrenPage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command to browse the category tree one level at a time with inline keyboard buttons.
+ * Every button press loads only the children of one category and edits the same message.
+ * Callback data has the form "nav:<category ID>:<offset>", category ID 0 stands for the root level.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BrowseCommand implements Command {
+
+    public static final String CALLBACK_PREFIX = "nav:";
+    private static final long ROOT = 0;
+
+    private final CategoryFacade categoryFacade;
+
+    /**
+     * Number of categories shown on one page.
+     */
+    @Value("${bot.browse.page-size:10}")
+    private int pageSize;
+
+    /**
+     * Executes the browse command: sends the root categories.
+     *
+     * @param command full command text
+     * @param chatId user chat ID
+     * @return message with the root categories and navigation buttons
+     */
+    @Override
+    public SendMessage execute(String command, Long chatId) {
+        log.info("Executing browse command for chat ID: {}", chatId);
+        ChildrenPage page = categoryFacade.findChildren(chatId, null, 0, pageSize);
+        return SendMessage.builder()
+                .chatId(chatId)
+                .text(text(page, 0))
+                .replyMarkup(keyboard(page, ROOT, 0))
+                .build();
+    }
+
+    /**
+     * Handles a button press: shows the requested level in the message the button belongs to.
+     *
+     * @param callbackQuery callback query with "nav:" data
+     * @return edit of the browse message
+     */
+    public EditMessageText navigate(CallbackQuery callbackQuery) {
+        Long chatId = callbackQuery.getMessage().getChatId();
+        String[] parts = callbackQuery.getData().substring(CALLBACK_PREFIX.length()).split(":");
+        long categoryId = Long.parseLong(parts[0]);
+        int offset = Math.max(0, Integer.parseInt(parts[1]));
+        log.debug("Browsing category {} at offset {} for chat ID: {}", categoryId, offset, chatId);
+
+        ChildrenPage page = categoryFacade.findChildren(chatId, categoryId == ROOT ? null : categoryId, offset, pageSize);
+        return EditMessageText.builder()
+                .chatId(chatId)
+                .messageId(callbackQuery.getMessage().getMessageId())
+                .text(categoryId != ROOT && page.parent() == null ? "This category no longer exists." : text(page, offset))
+                .replyMarkup(keyboard(page, categoryId, offset))
+                .build();
+    }
+
+    public static boolean isNavigation(String callbackData) {
+        return callbackData != null && callbackData.startsWith(CALLBACK_PREFIX);
+    }
+
+    private String text(ChildrenPage page, int offset) {
+        String title = page.parent() == null ? "Root categories" : "📂 " + page.parent().name();
+        if (page.children().isEmpty()) {
+            return title + (offset == 0 ? "\n\nThere are no categories here." : "\n\nThere are no more categories.");
+        }
+        if (offset == 0 && !page.hasMore()) {
+            return title;
+        }
+        return "%s\n\nCategories %d–%d".formatted(title, offset + 1, offset + page.children().size());
+    }
+
+    private InlineKeyboardMarkup keyboard(ChildrenPage page, long categoryId, int offset) {
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        for (CategoryEntry child : page.children()) {
+            rows.add(List.of(button(child.hasChildren() ? child.name() + " ›" : child.name(), child.id(), 0)));
+        }
+
+        List<InlineKeyboardButton> paging = new ArrayList<>();
+        if (offset > 0) {
+            paging.add(button("◀ Previous", categoryId, Math.max(0, offset - pageSize)));
+        }
+        if (page.hasMore()) {
+            paging.add(button("Next ▶", categoryId, offset + pageSize));
+        }
+        if (!paging.isEmpty()) {
+            rows.add(paging);
+        }
+
+        if (categoryId != ROOT) {
+            long upId = page.grandparentId() != null ? page.grandparentId() : ROOT;
+            rows.add(List.of(button("⬆ Up", upId, 0)));
+        }
+        return new InlineKeyboardMarkup(rows);
+    }
+
+    private InlineKeyboardButton button(String text, long categoryId, int offset) {
+        return InlineKeyboardButton.builder()
+                .text(text)
+                .callbackData(CALLBACK_PREFIX + categoryId + ":" + offset)
+                .build();
+    }
+}
@@ -0,0 +1,22 @@
+package telegram.bot.telegram_tt.command;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Document returned by a command.
+ *
+ * @param sendDocument document to send
+ * @param tempFile     temporary file the document is read from, deleted once the document is sent; may be null
+ * @param onSent       called with the sent message; may be null
+ * @param onFailed     called when the document could not be sent; may be null
+ */
+public record DocumentResponse(SendDocument sendDocument, Path tempFile, Consumer<Message> onSent, Runnable onFailed) {
+
+    public DocumentResponse(SendDocument sendDocument, Path tempFile) {
+        this(sendDocument, tempFile, null, null);
+    }
+}
@@ -6,10 +6,12 @@ import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import telegram.bot.telegram_tt.facade.CategoryFacade;
-import telegram.bot.telegram_tt.service.CategoryDownloadService;
+import telegram.bot.telegram_tt.service.DelimitedFormat;
+import telegram.bot.telegram_tt.service.ExportRefusedException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * Command to download all categories from the database.
@@ -19,45 +21,76 @@ import java.io.IOException;
 @Slf4j
 public class DownloadCommand implements Command {
 
+    private static final String FORMAT = "xlsx";
+    private static final String FILE_NAME = "AllCategoriesTree";
+
     private final CategoryFacade categoryFacade;
 
     /**
      * Executes the download categories command.
+     * "/download" sends an .xlsx file, "/download csv" and "/download tsv" send the tree as plain text.
      *
      * @param command the full command text
      * @param chatId the user's chat ID
-     * @return returns all data from the database as an .xlsx file
+     * @return returns all data from the database as a file, or an error message for an unknown format
+     * or a tree too large for an Excel sheet
      */
     @Override
-    public SendDocument execute(String command, Long chatId) {
+    public Object execute(String command, Long chatId) {
         log.info("Executing download command for chat ID: {}", chatId);
-        return getSendDocument(chatId);
+        String[] parts = command.trim().split("\\s+");
+        if (parts.length == 1) {
+            return getDocumentResponse(chatId, FORMAT, null);
+        }
+        Optional<DelimitedFormat> format = DelimitedFormat.fromName(parts[1]);
+        if (parts.length > 2 || format.isEmpty()) {
+            return "Unknown format. Use /download, /download csv or /download tsv.";
+        }
+        return getDocumentResponse(chatId, format.get().getExtension(), format.get());
     }
 
-    private SendDocument getSendDocument(Long chatId) {
-        try {
-            log.debug("Attempting to create the Excel file for chat ID: {}", chatId);
+    private Object getDocumentResponse(Long chatId, String extension, DelimitedFormat delimitedFormat) {
+        // Re-send the previous export if the tree has not changed since
+        long version = categoryFacade.getTreeVersion(chatId);
+        String cachedFileId = categoryFacade.findCachedExport(chatId, version, extension);
+        if (cachedFileId != null) {
+            log.info("Sending cached {} file for chat ID: {}, tree version: {}", extension, chatId, version);
+            return new DocumentResponse(createSendDocument(chatId, new InputFile(cachedFileId)), null, null,
+                    () -> categoryFacade.evictCachedExport(chatId, version, extension));
+        }
 
-            // Create an Excel file with categories using the service
-            byte[] excelFile = categoryFacade.createCategoryTreeExcel(chatId);
+        try {
+            log.debug("Attempting to create the {} file for chat ID: {}", extension, chatId);
 
-            // Convert the byte array into an InputStream for the document
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(excelFile);
+            // Create the file with categories using the service
+            Path exportFile = delimitedFormat != null
+                    ? categoryFacade.createCategoryTreeDelimited(chatId, delimitedFormat)
+                    : categoryFacade.createCategoryTreeExcel(chatId);
 
-            // Prepare the SendDocument object to send the Excel file
-            SendDocument sendDocument = new SendDocument();
-            sendDocument.setChatId(chatId);
-            sendDocument.setDocument(new InputFile(inputStream, "AllCategoriesTree.xlsx"));
-            sendDocument.setCaption("Categories Tree");
-            log.info("Excel file successfully created for chat ID: {}", chatId);
-            return sendDocument;
+            // Prepare the SendDocument object to send the file straight from disk
+            SendDocument sendDocument = createSendDocument(chatId,
+                    new InputFile(exportFile.toFile(), FILE_NAME + "." + extension));
+            log.info("{} file successfully created for chat ID: {}", extension, chatId);
+            return new DocumentResponse(sendDocument, exportFile,
+                    sent -> categoryFacade.cacheExport(chatId, version, extension, sent.getDocument().getFileId()), null);
+        } catch (ExportRefusedException e) {
+            log.warn("Refused {} export for chat ID: {}: {}", extension, chatId, e.getMessage());
+            return e.getMessage();
         } catch (IOException e) {
             // Log the error with details
-            log.error("Failed to generate Excel document for chat ID: {}", chatId, e);
+            log.error("Failed to generate {} document for chat ID: {}", extension, chatId, e);
 
             // Return null or an error response
             return null;
         }
     }
 
+    private SendDocument createSendDocument(Long chatId, InputFile document) {
+        SendDocument sendDocument = new SendDocument();
+        sendDocument.setChatId(chatId);
+        sendDocument.setDocument(document);
+        sendDocument.setCaption("Categories Tree");
+        return sendDocument;
+    }
+
 }
@@ -1,9 +1,10 @@
 package telegram.bot.telegram_tt.command;
 
+import telegram.bot.telegram_tt.service.UploadStagingService.StagedUpload;
+
 import java.io.IOException;
-import java.io.InputStream;
 
 // This is an interface for upload/download commands, in the implementations you can see the implementation of Command Pattern
 public interface FileCommand extends Command{
-    String executeFile(InputStream update, Long chatId) throws IOException;
+    String executeFile(StagedUpload upload, String command, Long chatId) throws IOException;
 }
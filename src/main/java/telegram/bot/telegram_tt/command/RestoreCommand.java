@@ -0,0 +1,43 @@
+package telegram.bot.telegram_tt.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.facade.CategoryFacade;
+
+/**
+ * Command to replace the category tree with a saved snapshot.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RestoreCommand implements Command {
+
+    private final CategoryFacade categoryFacade;
+
+    /**
+     * Executes the restore command.
+     * "/restore" lists the saved snapshots, "/restore <id>" restores one of them.
+     *
+     * @param command the full command text
+     * @param chatId the user's chat ID
+     * @return a message indicating the result
+     */
+    @Override
+    public String execute(String command, Long chatId) {
+        log.info("Executing restore command for chat ID: {}", chatId);
+        String[] parts = command.trim().split("\\s+");
+        if (!parts[0].equals("/restore") || parts.length > 2) {
+            return "Invalid command format. Use /restore or /restore <id>.";
+        }
+        if (parts.length == 1) {
+            return categoryFacade.listSnapshots(chatId);
+        }
+        try {
+            return categoryFacade.restoreSnapshot(Long.parseLong(parts[1].replace("#", "")), chatId);
+        } catch (NumberFormatException e) {
+            log.error("Invalid snapshot ID for chat ID: {}. Command: {}", chatId, command);
+            return "Invalid snapshot ID. Use /restore <id>.";
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package telegram.bot.telegram_tt.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.facade.CategoryFacade;
+
+/**
+ * Command to save the category tree as a snapshot.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SnapshotCommand implements Command {
+
+    private final CategoryFacade categoryFacade;
+
+    /**
+     * Executes the snapshot command.
+     *
+     * @param command the full command text
+     * @param chatId the user's chat ID
+     * @return a message with the ID of the saved snapshot
+     */
+    @Override
+    public String execute(String command, Long chatId) {
+        log.info("Executing snapshot command for chat ID: {}", chatId);
+        if (!command.trim().equals("/snapshot")) {
+            return "Invalid command format. Use /snapshot.";
+        }
+        return categoryFacade.createSnapshot(chatId);
+    }
+}
@@ -0,0 +1,21 @@
+package telegram.bot.telegram_tt.command;
+
+import java.util.function.Consumer;
+
+/**
+ * Command whose response is sent as a sequence of messages produced while the command runs,
+ * instead of a single response returned at the end.
+ * It is not a {@link Command}: TelegramBot keeps streaming commands in their own map and runs them with
+ * executeStreaming only.
+ */
+public interface StreamingCommand {
+
+    /**
+     * Executes the command.
+     *
+     * @param command full command text
+     * @param chatId  user chat ID
+     * @param sink    receives the response messages in the order they must be sent
+     */
+    void executeStreaming(String command, Long chatId, Consumer<String> sink);
+}
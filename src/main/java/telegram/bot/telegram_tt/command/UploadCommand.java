@@ -3,14 +3,16 @@ package telegram.bot.telegram_tt.command;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import telegram.bot.telegram_tt.facade.CategoryFacade;
-import telegram.bot.telegram_tt.service.CategoryUploadService;
+import telegram.bot.telegram_tt.service.UploadStagingService.StagedUpload;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Command to upload categories from an Excel file.
+ * Only the rows that differ from the current tree are written.
  */
 @Component
 @RequiredArgsConstructor
@@ -19,38 +21,63 @@ public class UploadCommand implements FileCommand {
 
     private final CategoryFacade categoryFacade;
 
+    private static final String PREVIEW = "preview";
+    private static final String SYNC = "sync";
+
     /**
      * Executes the command to upload categories from a file.
+     * The file is imported by a background job, which reports its progress in a status message of its own.
+     * With "preview" only the planned changes are reported; with "sync" categories missing from the file are deleted.
+     * A file that was the last one imported is skipped while the tree has not changed since.
      *
-     * @param inputStream the input file stream
+     * @param upload the uploaded file, staged on disk; moved away by the import job
+     * @param command the text of the /upload command that asked for the file
      * @param chatId the user's chat ID
-     * @return a response message indicating success or failure
-     * @throws IOException if there is an error processing the file
+     * @return the preview or the reason the file was skipped, or null if the import job sends its own messages
+     * @throws IOException if the file cannot be read or handed over to the import job
      */
     @Override
-    public String executeFile(InputStream inputStream, Long chatId) throws IOException {
-        log.info("Executing upload command for chat ID: {}", chatId);
+    public String executeFile(StagedUpload upload, String command, Long chatId) throws IOException {
+        log.info("Executing upload command '{}' for chat ID: {}", command, chatId);
+        List<String> arguments = arguments(command);
+        boolean deleteMissing = arguments.contains(SYNC);
+
+        // Answer a repeated upload before the file is opened
+        if (categoryFacade.isAlreadyImported(chatId, upload.getSha256(), deleteMissing)) {
+            log.info("Upload for chat ID {} matches the last imported file, skipped", chatId);
+            return "This file has already been imported and the category tree has not changed since. Nothing to do.";
+        }
 
-        // Get categories from the uploaded Excel file
-        LinkedHashMap<String, String> map = categoryFacade.getCategoriesFromExcelFile(inputStream);
-        log.debug("Categories loaded from file: {}", map);
+        if (arguments.contains(PREVIEW)) {
+            // Compare the file with the tree without writing anything
+            return categoryFacade.previewImport(upload.getPath(), chatId, deleteMissing);
+        }
 
-        // Add all categories to the database
-        String response = categoryFacade.addAllCategories(map, chatId);
-        log.info("Categories successfully uploaded for chat ID: {}", chatId);
-        return response;
+        // Queue the import, the status message shows its progress
+        long jobId = categoryFacade.submitImport(upload.getPath(), upload.getSha256(), chatId, deleteMissing);
+        log.info("Upload for chat ID {} queued as import job {}", chatId, jobId);
+        return null;
     }
 
     /**
-     * This method is not used in this context.
+     * Checks the arguments of the command before the file is asked for.
      *
      * @param command the full text of the command
      * @param chatId the user's chat ID
-     * @return null
+     * @return an error message, or null if the arguments are valid
      */
     @Override
     public Object execute(String command, Long chatId) {
-        log.warn("Execute command method not implemented. Command: {}", command);
+        for (String argument : arguments(command)) {
+            if (!argument.equals(PREVIEW) && !argument.equals(SYNC)) {
+                return "Unknown argument: " + argument + ". Use /upload, /upload preview, /upload sync or /upload preview sync.";
+            }
+        }
         return null;
     }
+
+    private static List<String> arguments(String command) {
+        String[] parts = command.trim().split("\\s+");
+        return Arrays.asList(parts).subList(1, parts.length);
+    }
 }
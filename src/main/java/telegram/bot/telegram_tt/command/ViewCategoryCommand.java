@@ -2,35 +2,114 @@ package telegram.bot.telegram_tt.command;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.bot.OutboundScheduler;
 import telegram.bot.telegram_tt.facade.CategoryFacade;
-import telegram.bot.telegram_tt.service.CategoryService;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * Command to view all categories in a tree format from the database.
+ * Large trees are sent as several messages, "/viewTree page=<n>" sends only one of them
+ * and "/viewTree <category> [depth=<n>]" sends only the subtree of one category.
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
-public class ViewCategoryCommand implements Command {
+public class ViewCategoryCommand implements StreamingCommand {
+
+    private static final String PAGE = "page=";
+    private static final String DEPTH = "depth=";
 
     private final CategoryFacade categoryFacade;
 
     /**
-     * Executes the command to view all categories.
+     * Executes the command to view the categories, sending the tree in message-sized chunks.
+     * Supported forms:
+     * "/viewTree" - the whole tree;
+     * "/viewTree page=<n>" - one chunk of the whole tree;
+     * "/viewTree <category> [depth=<n>]" - the subtree of a category, optionally down to a depth.
+     * Page and depth are named, so category names that are or end with a number, such as "2024" or
+     * "iPhone 15", are shown as categories.
      *
      * @param command the full text of the command
      * @param chatId the user's chat ID
-     * @return returns all data from the database in a tree format
+     * @param sink receives the messages in order
      */
     @Override
-    public String execute(String command, Long chatId) {
+    public void executeStreaming(String command, Long chatId, Consumer<String> sink) {
         log.info("Executing View Category Command for chat ID: {}", chatId);
 
-        // Get the categories in a tree format
-        String categoryTree = categoryFacade.viewCategoryTree(chatId);
-        log.debug("Category tree fetched for chat ID {}: {}", chatId, categoryTree);
+        String[] args = command.trim().split("\\s+");
+        List<String> words = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+        Integer page = null;
+        Integer depth = null;
+        // Options come after the category name
+        while (!words.isEmpty()) {
+            String last = words.get(words.size() - 1);
+            if (page == null && option(last, PAGE) != null) {
+                page = option(last, PAGE);
+            } else if (depth == null && option(last, DEPTH) != null) {
+                depth = option(last, DEPTH);
+            } else {
+                break;
+            }
+            words.remove(words.size() - 1);
+        }
+        String name = String.join(" ", words);
+
+        if (name.isEmpty()) {
+            if (depth != null) {
+                sink.accept("Name a category to limit the depth, e.g. /viewTree Electronics depth=2.");
+                return;
+            }
+            if (page == null) {
+                categoryFacade.streamCategoryTree(chatId, 0, OutboundScheduler.MAX_MESSAGE_LENGTH, sink);
+                return;
+            }
+            if (page < 1) {
+                sink.accept("Page numbers start at 1.");
+                return;
+            }
+            categoryFacade.streamCategoryTree(chatId, page, OutboundScheduler.MAX_MESSAGE_LENGTH, sink);
+            return;
+        }
+        if (page != null) {
+            sink.accept("Pages are only available for the whole tree, e.g. /viewTree page=2.");
+            return;
+        }
+        int maxDepth = depth != null ? depth : Integer.MAX_VALUE;
+        log.debug("Viewing subtree of category '{}' to depth {} for chat ID: {}", name, maxDepth, chatId);
+        categoryFacade.streamSubtree(name, chatId, maxDepth, OutboundScheduler.MAX_MESSAGE_LENGTH, sink);
+    }
+
+    /**
+     * Reads a named number such as "depth=3".
+     *
+     * @param arg one word of the command
+     * @param key option name including the '='
+     * @return the number, null if the word is not this option
+     */
+    private Integer option(String arg, String key) {
+        if (!arg.regionMatches(true, 0, key, 0, key.length())) {
+            return null;
+        }
+        String value = arg.substring(key.length());
+        return isNumber(value) ? Integer.parseInt(value) : null;
+    }
 
-        return categoryTree;
+    private boolean isNumber(String arg) {
+        if (arg.isEmpty() || arg.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < arg.length(); i++) {
+            if (!Character.isDigit(arg.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 }
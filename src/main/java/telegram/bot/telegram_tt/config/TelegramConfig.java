@@ -5,13 +5,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import telegram.bot.telegram_tt.bot.MediaFileCache;
+import telegram.bot.telegram_tt.bot.OutboundScheduler;
 import telegram.bot.telegram_tt.bot.TelegramBot;
+import telegram.bot.telegram_tt.bot.UpdateDispatcher;
 import telegram.bot.telegram_tt.command.*;
 import telegram.bot.telegram_tt.factory.DefaultCommandResponseFactory;
 import telegram.bot.telegram_tt.service.CategoryDownloadService;
-import telegram.bot.telegram_tt.service.CategoryUploadService;
+import telegram.bot.telegram_tt.service.UploadStagingService;
 
 /**
  * Configuration class for initializing Telegram bot.
@@ -22,36 +26,64 @@ public class TelegramConfig {
 
     /**
      * Bin for creating and registering a Telegram bot.
+     * In polling mode the bot is registered with a long-polling session,
+     * in webhook mode updates are received by the WebhookController instead.
      *
      * @param botName bot name
      * @param token bot token
+     * @param mode how updates are received: polling or webhook
+     * @param webhookUrl public base URL of the webhook endpoint, may be empty for local testing
+     * @param webhookPath path of the webhook endpoint
+     * @param webhookSecret secret token Telegram sends with every webhook request
      * @param addCategoryCommand command to add a category
      * @param viewCategoryCommand command to view categories
      * @param removeCategoryCommand command to delete a category
      * @param uploadCommand command to upload data
      * @param downloadCommand command to download data
+     * @param browseCommand command to browse categories level by level
+     * @param snapshotCommand command to save the category tree as a snapshot
+     * @param restoreCommand command to restore a snapshot
      * @param categoryDownloadService service to download categories
-     * @param categoryUploadService service to upload categories
      * @param defaultCommandResponseFactory factory for getting default commands
+     * @param updateDispatcher dispatcher processing updates of different chats in parallel
+     * @param outboundScheduler rate-limited queue for sending messages
+     * @param mediaFileCache cache of file_ids of the example images
+     * @param uploadStagingService service staging uploaded files on disk
      * @return TelegramBot bot instance
      */
     @Bean
     public TelegramBot telegramBot(@Value("${bot.name}") String botName,
                                    @Value("${bot.token}") String token,
+                                   @Value("${bot.mode:polling}") String mode,
+                                   @Value("${bot.webhook.url:}") String webhookUrl,
+                                   @Value("${bot.webhook.path:/telegram/webhook}") String webhookPath,
+                                   @Value("${bot.webhook.secret:}") String webhookSecret,
                                    AddCategoryCommand addCategoryCommand,
                                    ViewCategoryCommand viewCategoryCommand,
                                    RemoveCategoryCommand removeCategoryCommand,
                                    UploadCommand uploadCommand,
                                    DownloadCommand downloadCommand,
+                                   BrowseCommand browseCommand,
+                                   SnapshotCommand snapshotCommand,
+                                   RestoreCommand restoreCommand,
                                    CategoryDownloadService categoryDownloadService,
-                                   CategoryUploadService categoryUploadService,
-                                   DefaultCommandResponseFactory defaultCommandResponseFactory) {
+                                  
+                                   DefaultCommandResponseFactory defaultCommandResponseFactory,
+                                   UpdateDispatcher updateDispatcher,
+                                   OutboundScheduler outboundScheduler,
+                                   MediaFileCache mediaFileCache,
+                                   UploadStagingService uploadStagingService) {
         log.info("Initializing Telegram bot with name: {}", botName);
 
         TelegramBot telegramBot = new TelegramBot(botName, token, addCategoryCommand, viewCategoryCommand,
-                removeCategoryCommand, uploadCommand, downloadCommand,
-                categoryDownloadService, categoryUploadService, defaultCommandResponseFactory);
+                removeCategoryCommand, uploadCommand, downloadCommand, browseCommand,
+                snapshotCommand, restoreCommand, categoryDownloadService, defaultCommandResponseFactory, updateDispatcher,
+                outboundScheduler, mediaFileCache, uploadStagingService);
 
+        if ("webhook".equals(mode)) {
+            registerWebhook(telegramBot, webhookUrl, webhookPath, webhookSecret);
+            return telegramBot;
+        }
         try {
             TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
             telegramBotsApi.registerBot(telegramBot);
@@ -62,4 +94,31 @@ public class TelegramConfig {
         }
         return telegramBot;
     }
+
+    /**
+     * Points Telegram to the webhook endpoint of this application.
+     * Without a configured URL nothing is registered, which allows testing the endpoint locally.
+     *
+     * @param telegramBot bot instance
+     * @param webhookUrl public base URL of the application
+     * @param webhookPath path of the webhook endpoint
+     * @param webhookSecret secret token Telegram sends with every webhook request
+     */
+    private void registerWebhook(TelegramBot telegramBot, String webhookUrl, String webhookPath, String webhookSecret) {
+        if (webhookUrl.isEmpty()) {
+            log.warn("Webhook mode is enabled but bot.webhook.url is not set, the webhook is not registered with Telegram.");
+            return;
+        }
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(webhookUrl + webhookPath)
+                .secretToken(webhookSecret.isEmpty() ? null : webhookSecret)
+                .build();
+        try {
+            telegramBot.execute(setWebhook);
+            log.info("Telegram webhook registered at {}", setWebhook.getUrl());
+        } catch (TelegramApiException e) {
+            log.error("Exception during Telegram webhook registration: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to register Telegram webhook.", e);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package telegram.bot.telegram_tt.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import telegram.bot.telegram_tt.bot.TelegramBot;
+import telegram.bot.telegram_tt.bot.UpdateDeduplicator;
+import telegram.bot.telegram_tt.bot.UpdateDispatcher;
+
+/**
+ * Endpoint receiving updates from Telegram when the bot runs in webhook mode.
+ * Each update is acknowledged right away and processed asynchronously by the {@link UpdateDispatcher}.
+ *
+ * For local testing a recorded update can be posted directly:
+ * curl -X POST -H "Content-Type: application/json" -d @update.json http://localhost:8080/telegram/webhook
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+public class WebhookController {
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final TelegramBot telegramBot;
+    private final UpdateDispatcher updateDispatcher;
+    private final UpdateDeduplicator updateDeduplicator;
+
+    @Value("${bot.webhook.secret:}")
+    private String secret;
+    @Value("${bot.webhook.accept-timeout-ms:500}")
+    private long acceptTimeout;
+
+    /**
+     * Accepts an update from Telegram.
+     *
+     * @param secretToken secret token Telegram sends with every request, checked when a secret is configured
+     * @param update      received update
+     * @return 200 when the update is accepted or was already received before,
+     * 503 when the processing queue is full, so that Telegram delivers the update again later
+     */
+    @PostMapping("${bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> onUpdate(@RequestHeader(value = SECRET_HEADER, required = false) String secretToken,
+                                         @RequestBody Update update) {
+        if (!secret.isEmpty() && !secret.equals(secretToken)) {
+            log.warn("Rejected webhook request with an invalid secret token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!updateDeduplicator.firstSeen(update.getUpdateId())) {
+            log.debug("Update {} was already received, skipping", update.getUpdateId());
+            return ResponseEntity.ok().build();
+        }
+        if (!updateDispatcher.tryDispatch(update, telegramBot::onUpdateReceived, acceptTimeout)) {
+            log.warn("Update queue is full, asking Telegram to redeliver update {}", update.getUpdateId());
+            updateDeduplicator.forget(update.getUpdateId());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
@@ -10,21 +10,32 @@ import java.util.List;
 /**
  * Entity to represent a category in the database.
  * Mapping to the category table in the database.
+ * Category names are unique within a chat; children are looked up by (chat_id, parent_id).
  */
 
 // This uses the Builder Pattern
 @Entity
-@Table(name = "category")
+@Table(name = "category",
+        uniqueConstraints = @UniqueConstraint(name = "uk_category_chat_id_name", columnNames = {"chat_id", "name"}),
+        indexes = @Index(name = "idx_category_chat_id_parent_id", columnList = "chat_id, parent_id"))
 @Getter
 @Setter
 public class Category {
 
+    /**
+     * Number of IDs reserved with one call to category_seq.
+     * Must match the INCREMENT BY of the sequence.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     /**
      * Category ID (primary key).
-     * Value is generated automatically.
+     * Value is taken from category_seq with the pooled optimizer: one sequence call reserves a block of IDs,
+     * so Hibernate knows IDs before inserting and can send inserts as JDBC batches.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "category_seq")
+    @SequenceGenerator(name = "category_seq", sequenceName = "category_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     /**
@@ -40,8 +51,9 @@ public class Category {
     /**
      * Parent category.
      * Many-to-One relationship, i.e. one category can have one parent.
+     * Loaded lazily, so looking up a category does not also load the chain of its ancestors.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Category parent;
 
     /**
@@ -49,9 +61,10 @@ public class Category {
      * One-to-Many relationship, i.e. one category can have several child categories.
      * CascadeType.ALL means that all operations with the parent will also affect the child categories.
      * orphanRemoval = true means that if the child category is no longer associated with the parent, it will be removed.
-     * FetchType.EAGER means that the child categories will be loaded immediately when the parent category is loaded.
+     * FetchType.LAZY means that the child categories are loaded only when they are accessed.
+     * Whole trees are loaded with CategoryRepository.findTreeRowsByChatId instead.
      */
-    @OneToMany(mappedBy = "parent", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "parent", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     private List<Category> children = new ArrayList<>();
 
     public Category() {
@@ -0,0 +1,31 @@
+package telegram.bot.telegram_tt.entity;
+
+/**
+ * State of a background import job.
+ */
+public enum ImportJobStatus {
+    /**
+     * Waiting for the previous import of the same chat or for a free worker.
+     */
+    QUEUED,
+    /**
+     * Rows are being written; committed chunks are visible.
+     */
+    RUNNING,
+    /**
+     * All rows were written.
+     */
+    DONE,
+    /**
+     * The import failed and its committed chunks were rolled back.
+     */
+    FAILED,
+    /**
+     * The import was interrupted and could not be resumed, its committed chunks were rolled back.
+     */
+    ROLLED_BACK;
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED || this == ROLLED_BACK;
+    }
+}
@@ -2,21 +2,39 @@ package telegram.bot.telegram_tt.facade;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.repository.CategoryNavigationRepository.ChildrenPage;
 import telegram.bot.telegram_tt.service.CategoryDownloadService;
 import telegram.bot.telegram_tt.service.CategoryService;
-import telegram.bot.telegram_tt.service.CategoryUploadService;
+import telegram.bot.telegram_tt.service.CategorySnapshotService;
+import telegram.bot.telegram_tt.service.CategoryTreeVersionService;
+import telegram.bot.telegram_tt.service.DelimitedFormat;
+import telegram.bot.telegram_tt.service.ExportCache;
+import telegram.bot.telegram_tt.service.ImportJobService;
+import telegram.bot.telegram_tt.service.ParentCategory;
+import telegram.bot.telegram_tt.service.ParentCategoryResolver;
+import telegram.bot.telegram_tt.service.ParentCategoryResolver.ParentMatch;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.LinkedHashMap;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 // Facade Pattern is used here
 @Component
 @RequiredArgsConstructor
 public class CategoryFacade {
+    // Import jobs write against the tree as it was when they read their file, so edits wait for them
+    private static final String IMPORT_RUNNING =
+            "An upload is still being imported. Please try again when the import is done.";
+
     private final CategoryService categoryService;
     private final CategoryDownloadService categoryDownloadService;
-    private final CategoryUploadService categoryUploadService;
+    private final CategoryTreeVersionService categoryTreeVersionService;
+    private final ParentCategoryResolver parentCategoryResolver;
+    private final ExportCache exportCache;
+    private final ImportJobService importJobService;
+    private final CategorySnapshotService categorySnapshotService;
 
     /**
      * Adds a root category.
@@ -26,19 +44,36 @@ public class CategoryFacade {
      * @return a message indicating the result
      */
     public String addRootCategory(String name, Long chatId) {
+        if (importJobService.isImporting(chatId)) {
+            return IMPORT_RUNNING;
+        }
         return categoryService.addRootCategory(name, chatId);
     }
 
     /**
-     * Adds a child category under a parent category.
+     * Adds a child category under a parent category that has already been resolved.
      *
-     * @param parentName the name of the parent category
-     * @param childName  the name of the child category
-     * @param chatId     the chat identifier
+     * @param parent    the parent category
+     * @param childName the name of the child category
+     * @param chatId    the chat identifier
      * @return a message indicating the result
      */
-    public String addChildCategory(String parentName, String childName, Long chatId) {
-        return categoryService.addChildCategory(parentName, childName, chatId);
+    public String addChildCategory(ParentCategory parent, String childName, Long chatId) {
+        if (importJobService.isImporting(chatId)) {
+            return IMPORT_RUNNING;
+        }
+        return categoryService.addChildCategory(parent, childName, chatId);
+    }
+
+    /**
+     * Finds the longest run of leading words that names an existing category.
+     *
+     * @param words  the words of the message after the command
+     * @param chatId the chat identifier
+     * @return the parent category and the number of words it takes, if any
+     */
+    public Optional<ParentMatch> resolveParent(List<String> words, Long chatId) {
+        return parentCategoryResolver.resolve(words, chatId);
     }
 
     /**
@@ -49,17 +84,48 @@ public class CategoryFacade {
      * @return a message indicating the result
      */
     public String removeCategory(String name, Long chatId) {
+        if (importJobService.isImporting(chatId)) {
+            return IMPORT_RUNNING;
+        }
         return categoryService.removeCategory(name, chatId);
     }
 
     /**
-     * Views the category tree.
+     * Streams the category tree in message-sized chunks.
      *
-     * @param chatId the chat identifier
-     * @return a string representing the category tree
+     * @param chatId         the chat identifier
+     * @param page           the only chunk to send, 0 for the whole tree
+     * @param maxChunkLength the maximum length of one chunk
+     * @param sink           receives the messages in order
+     */
+    public void streamCategoryTree(Long chatId, int page, int maxChunkLength, Consumer<String> sink) {
+        categoryService.streamCategoryTree(chatId, page, maxChunkLength, sink);
+    }
+
+    /**
+     * Streams the subtree of a category in message-sized chunks.
+     *
+     * @param name           the name of the category
+     * @param chatId         the chat identifier
+     * @param maxDepth       the maximum depth below the category
+     * @param maxChunkLength the maximum length of one chunk
+     * @param sink           receives the messages in order
+     */
+    public void streamSubtree(String name, Long chatId, int maxDepth, int maxChunkLength, Consumer<String> sink) {
+        categoryService.streamSubtree(name, chatId, maxDepth, maxChunkLength, sink);
+    }
+
+    /**
+     * Loads one page of the children of a category.
+     *
+     * @param chatId   the chat identifier
+     * @param parentId the category identifier, null for the root categories
+     * @param offset   the number of children to skip
+     * @param limit    the maximum number of children
+     * @return the page of children
      */
-    public String viewCategoryTree(Long chatId) {
-        return categoryService.viewCategoryTree(chatId);
+    public ChildrenPage findChildren(Long chatId, Long parentId, int offset, int limit) {
+        return categoryService.findChildren(chatId, parentId, offset, limit);
     }
 
     /**
@@ -77,20 +143,127 @@ public class CategoryFacade {
      * Creates an Excel file with the category tree for the given chat.
      *
      * @param chatId the chat identifier
-     * @return a byte array representing the Excel file
+     * @return temporary file with the Excel document
      * @throws IOException if there are issues writing the file
      */
-    public byte[] createCategoryTreeExcel(Long chatId) throws IOException {
+    public Path createCategoryTreeExcel(Long chatId) throws IOException {
         return categoryDownloadService.createCategoryTreeExcel(chatId);
     }
 
-    // Extract categories from the Excel file
-    public LinkedHashMap<String, String> getCategoriesFromExcelFile(InputStream inputStream) {
-        return categoryUploadService.getCategoriesFromExcelFile(inputStream);
+    /**
+     * Creates a CSV or TSV file with the category tree for the given chat.
+     *
+     * @param chatId the chat identifier
+     * @param format the text format of the file
+     * @return temporary file with the document
+     * @throws IOException if there are issues writing the file
+     */
+    public Path createCategoryTreeDelimited(Long chatId, DelimitedFormat format) throws IOException {
+        return categoryDownloadService.createCategoryTreeDelimited(chatId, format);
+    }
+
+    /**
+     * Returns the current version of the category tree of a chat.
+     *
+     * @param chatId the chat identifier
+     * @return the tree version, bumped by every change of the tree
+     */
+    public long getTreeVersion(Long chatId) {
+        return categoryTreeVersionService.currentVersion(chatId);
+    }
+
+    /**
+     * Looks up the Telegram file_id of a previous export of the same tree version.
+     *
+     * @param chatId  the chat identifier
+     * @param version the tree version
+     * @param format  the export format
+     * @return the file_id, or null if there is none
+     */
+    public String findCachedExport(Long chatId, long version, String format) {
+        return exportCache.get(chatId, version, format);
+    }
+
+    // Remembers the file_id of a sent export
+    public void cacheExport(Long chatId, long version, String format, String fileId) {
+        exportCache.put(chatId, version, format, fileId);
+    }
+
+    // Forgets an export whose file_id could not be sent
+    public void evictCachedExport(Long chatId, long version, String format) {
+        exportCache.remove(chatId, version, format);
+    }
+
+    /**
+     * Queues an uploaded file for import in the background.
+     *
+     * @param file          the uploaded file, moved to the import staging directory
+     * @param sha256        the SHA-256 of the file
+     * @param chatId        the chat identifier
+     * @param deleteMissing whether categories missing from the file are deleted
+     * @return the import job identifier
+     * @throws IOException if the file cannot be staged
+     */
+    public long submitImport(Path file, String sha256, Long chatId, boolean deleteMissing) throws IOException {
+        return importJobService.submit(file, sha256, chatId, deleteMissing);
+    }
+
+    /**
+     * Checks whether a file was the last one imported and the tree has not changed since.
+     *
+     * @param chatId        the chat identifier
+     * @param sha256        the SHA-256 of the file
+     * @param deleteMissing whether the upload deletes categories missing from the file
+     * @return true if importing the file again would change nothing
+     */
+    public boolean isAlreadyImported(Long chatId, String sha256, boolean deleteMissing) {
+        return importJobService.isAlreadyImported(chatId, sha256, deleteMissing);
+    }
+
+    /**
+     * Reports the changes an upload would make without writing anything.
+     *
+     * @param file          the uploaded file
+     * @param chatId        the chat identifier
+     * @param deleteMissing whether categories missing from the file would be deleted
+     * @return a description of the planned changes
+     * @throws IOException if the file cannot be read
+     */
+    public String previewImport(Path file, Long chatId, boolean deleteMissing) throws IOException {
+        return importJobService.preview(file, chatId, deleteMissing);
     }
 
-    // Adds all categories from the Excel file to the database
-    public String addAllCategories(LinkedHashMap<String, String> map, Long chatId) {
-        return categoryUploadService.addAllCategories(map, chatId);
+    /**
+     * Saves the category tree as a snapshot.
+     *
+     * @param chatId the chat identifier
+     * @return a message with the ID of the snapshot
+     */
+    public String createSnapshot(Long chatId) {
+        return categorySnapshotService.create(chatId);
+    }
+
+    /**
+     * Replaces the category tree with a snapshot.
+     *
+     * @param id     the snapshot identifier
+     * @param chatId the chat identifier
+     * @return a message indicating the result
+     */
+    public String restoreSnapshot(long id, Long chatId) {
+        if (importJobService.isImporting(chatId)) {
+            return IMPORT_RUNNING;
+        }
+        return categorySnapshotService.restore(id, chatId);
+    }
+
+    /**
+     * Lists the saved snapshots.
+     *
+     * @param chatId the chat identifier
+     * @return a message with one line per snapshot
+     */
+    public String listSnapshots(Long chatId) {
+        return categorySnapshotService.list(chatId);
     }
 }
@@ -13,12 +13,14 @@ public class DefaultCommandResponseFactory implements CommandResponseFactory {
                         
             "-" - означает отсутствие родительской категории.
                         
+            Также можно отправить файл .csv или .tsv в кодировке UTF-8 с теми же двумя колонками и строкой заголовков.
+                        
             Пожалуйста, отправьте ваш файл, я с удовольствием обработаю его 😊
             """;
     private static final String RULES = """
             Команды:
                         
-            1) /viewTree - 📜 Показать текущее дерево категорий в структурированном формате.
+            1) /viewTree - 📜 Показать текущее дерево категорий в структурированном формате. Большое дерево приходит несколькими сообщениями, /viewTree page=<номер> покажет только одно из них. /viewTree <элемент> [depth=<глубина>] покажет только ветку этого элемента.
                         
             2) /addElement <название элемента> - ➕ Добавить элемент как корневой, если у него нет родителя.
                         
@@ -28,9 +30,15 @@ public class DefaultCommandResponseFactory implements CommandResponseFactory {
                         
             5) /help - ℹ️ Показать список команд и их описание.
                         
-            6) /download - 📥 Скачать документ Excel с деревом категорий.
+            6) /download - 📥 Скачать документ Excel с деревом категорий. /download csv или /download tsv пришлёт дерево текстовым файлом.
+                        
+            7) /upload - 📤 Загрузить документ Excel с деревом категорий и сохранить все элементы в базе данных. Записываются только изменения по сравнению с текущим деревом. /upload preview покажет изменения, ничего не записывая, /upload sync также удалит элементы, которых нет в файле.
+                        
+            8) /browse - 🧭 Просматривать дерево категорий по уровням с помощью кнопок.
+                        
+            9) /snapshot - 💾 Сохранить снимок текущего дерева категорий. Хранятся только последние снимки.
                         
-            7) /upload - 📤 Загрузить документ Excel с деревом категорий и сохранить все элементы в базе данных.
+            10) /restore <номер снимка> - ⏪ Заменить дерево категорий сохранённым снимком. /restore без номера покажет список снимков.
             """;
 
     private static final String START_MESSAGE = """
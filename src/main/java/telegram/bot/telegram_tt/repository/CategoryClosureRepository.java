@@ -0,0 +1,168 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * Repository for the category closure table.
+ *
+ * The closure table holds a row for every (ancestor, descendant) pair with the distance between them,
+ * so subtree questions such as deletes and cycle checks are answered with one indexed lookup instead
+ * of a walk along the parent links. Rows are removed together with their categories by ON DELETE CASCADE.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryClosureRepository {
+
+    /**
+     * The given categories and everything below them, following the parent links as they are now.
+     */
+    private static final String AFFECTED = """
+            with recursive affected as (
+                select id from category where id = any(?)
+                union
+                select c.id from category c join affected on c.parent_id = affected.id
+            )
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Adds the closure rows of a new root category.
+     *
+     * @param name   category name
+     * @param chatId chat ID
+     */
+    public void insertRoot(String name, Long chatId) {
+        jdbcTemplate.update("""
+                insert into category_closure (ancestor_id, descendant_id, depth)
+                select id, id, 0 from category where chat_id = ? and name = ?
+                on conflict do nothing
+                """, chatId, name);
+    }
+
+    /**
+     * Moves the closure rows of a category and its subtree under the current parent of the category.
+     * Works for new categories as well: they only get their own row first.
+     *
+     * @param name   category name
+     * @param chatId chat ID
+     */
+    public void attachToParent(String name, Long chatId) {
+        jdbcTemplate.update("""
+                insert into category_closure (ancestor_id, descendant_id, depth)
+                select id, id, 0 from category where chat_id = ? and name = ?
+                on conflict do nothing
+                """, chatId, name);
+        // Unlink the subtree from its old ancestors
+        jdbcTemplate.update("""
+                delete from category_closure link
+                using category c, category_closure sub
+                where c.chat_id = ? and c.name = ?
+                  and sub.ancestor_id = c.id
+                  and link.descendant_id = sub.descendant_id
+                  and link.ancestor_id not in (select descendant_id from category_closure where ancestor_id = c.id)
+                """, chatId, name);
+        // Link the subtree to the new parent and all of its ancestors
+        jdbcTemplate.update("""
+                insert into category_closure (ancestor_id, descendant_id, depth)
+                select up.ancestor_id, sub.descendant_id, up.depth + sub.depth + 1
+                from category c
+                join category_closure up on up.descendant_id = c.parent_id
+                join category_closure sub on sub.ancestor_id = c.id
+                where c.chat_id = ? and c.name = ?
+                """, chatId, name);
+    }
+
+    /**
+     * Recomputes the closure rows of categories whose parent links were just written, together with their subtrees.
+     * New categories get their rows as well. Only the affected subtrees are touched: their paths are walked up
+     * along the parent links until the first unaffected category, whose closure rows are still valid and supply
+     * the rest of the path. Used by import chunks, so an upload costs work in proportion to what it changes.
+     *
+     * @param ids categories that were created or got a new parent
+     */
+    public void refresh(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(AFFECTED + """
+                    delete from category_closure where descendant_id in (select id from affected)
+                    """);
+            ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(AFFECTED + """
+                    , paths as (
+                        select id as descendant_id, id as node_id, 0 as depth from affected
+                        union all
+                        select paths.descendant_id, c.parent_id, paths.depth + 1
+                        from paths
+                        join category c on c.id = paths.node_id
+                        where c.parent_id is not null and paths.node_id in (select id from affected)
+                    )
+                    insert into category_closure (ancestor_id, descendant_id, depth)
+                    select node_id, descendant_id, depth from paths
+                    where node_id in (select id from affected)
+                    union all
+                    select up.ancestor_id, paths.descendant_id, paths.depth + up.depth
+                    from paths
+                    join category_closure up on up.descendant_id = paths.node_id
+                    where paths.node_id not in (select id from affected)
+                    """);
+            ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Rebuilds the closure rows of a whole chat from the parent links. Used when a whole tree is replaced
+     * or an import is rolled back.
+     *
+     * @param chatId chat ID
+     */
+    public void rebuild(Long chatId) {
+        jdbcTemplate.update("""
+                delete from category_closure
+                where descendant_id in (select id from category where chat_id = ?)
+                """, chatId);
+        jdbcTemplate.update("""
+                with recursive paths as (
+                    select id as ancestor_id, id as descendant_id, 0 as depth from category where chat_id = ?
+                    union all
+                    select paths.ancestor_id, c.id, paths.depth + 1
+                    from paths
+                    join category c on c.parent_id = paths.descendant_id
+                    where c.id <> paths.ancestor_id
+                )
+                insert into category_closure (ancestor_id, descendant_id, depth)
+                select ancestor_id, descendant_id, depth from paths
+                """, chatId);
+    }
+
+    /**
+     * Checks whether a category lies in the subtree of another category (or is that category).
+     *
+     * @param name         category name
+     * @param ancestorName name of the possible ancestor
+     * @param chatId       chat ID
+     * @return true if the category is the ancestor or one of its descendants
+     */
+    public boolean isUnder(String name, String ancestorName, Long chatId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                select exists (
+                    select 1
+                    from category a
+                    join category_closure cc on cc.ancestor_id = a.id
+                    join category d on d.id = cc.descendant_id
+                    where a.chat_id = ? and a.name = ? and d.chat_id = ? and d.name = ?
+                )
+                """, Boolean.class, chatId, ancestorName, chatId, name));
+    }
+}
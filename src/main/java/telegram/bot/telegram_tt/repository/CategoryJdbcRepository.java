@@ -0,0 +1,136 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import telegram.bot.telegram_tt.entity.Category;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository for set-based category writes that go around the JPA persistence context.
+ * Used where rows are written in bulk and loading entities would cost one statement per row.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Reserves IDs for new categories in one query.
+     * Like the pooled optimizer used by Hibernate, every value taken from category_seq is the upper end
+     * of a block of Category.ID_ALLOCATION_SIZE IDs.
+     *
+     * @param count number of IDs
+     * @return reserved IDs
+     */
+    public List<Long> allocateIds(int count) {
+        int blocks = (count + Category.ID_ALLOCATION_SIZE - 1) / Category.ID_ALLOCATION_SIZE;
+        List<Long> blockEnds = jdbcTemplate.queryForList(
+                "select nextval('category_seq') from generate_series(1, ?)", Long.class, blocks);
+        List<Long> ids = new ArrayList<>(count);
+        for (long blockEnd : blockEnds) {
+            for (long id = blockEnd - Category.ID_ALLOCATION_SIZE + 1; id <= blockEnd && ids.size() < count; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts categories without a parent using JDBC batches.
+     *
+     * @param chatId      chat ID
+     * @param categories  pairs of (category name, reserved category ID)
+     * @param importJobId import job creating the categories, null if they are not created by an import job
+     * @param batchSize   number of rows sent per batch
+     * @return number of batches sent
+     */
+    public int insertAll(Long chatId, List<Map.Entry<String, Long>> categories, Long importJobId, int batchSize) {
+        return jdbcTemplate.batchUpdate("insert into category (id, chat_id, name, import_job_id) values (?, ?, ?, ?)",
+                categories, batchSize, (ps, category) -> {
+                    ps.setLong(1, category.getValue());
+                    ps.setLong(2, chatId);
+                    ps.setString(3, category.getKey());
+                    ps.setObject(4, importJobId, Types.BIGINT);
+                }).length;
+    }
+
+    /**
+     * Inserts a whole tree with its parent links using JDBC batches.
+     * Every parent has to come before its children, as in depth-first order.
+     *
+     * @param chatId    chat ID
+     * @param ids       reserved category IDs
+     * @param names     category names
+     * @param parents   index of the parent of each category, -1 for root categories
+     * @param batchSize number of rows sent per batch
+     * @return number of batches sent
+     */
+    public int insertTree(Long chatId, List<Long> ids, String[] names, int[] parents, int batchSize) {
+        List<Integer> indexes = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            indexes.add(i);
+        }
+        return jdbcTemplate.batchUpdate("insert into category (id, chat_id, name, parent_id) values (?, ?, ?, ?)",
+                indexes, batchSize, (ps, index) -> {
+                    ps.setLong(1, ids.get(index));
+                    ps.setLong(2, chatId);
+                    ps.setString(3, names[index]);
+                    ps.setObject(4, parents[index] < 0 ? null : ids.get(parents[index]), Types.BIGINT);
+                }).length;
+    }
+
+    /**
+     * Deletes all categories of a chat in one statement. Their closure rows are deleted by the foreign key cascade.
+     *
+     * @param chatId chat ID
+     * @return number of deleted categories
+     */
+    public int deleteByChatId(Long chatId) {
+        return jdbcTemplate.update("delete from category where chat_id = ?", chatId);
+    }
+
+    /**
+     * Sets the parent of categories using JDBC batches.
+     *
+     * @param links     new parents of the categories
+     * @param batchSize number of rows sent per batch
+     * @return number of batches sent
+     */
+    public int updateParents(List<ParentLink> links, int batchSize) {
+        return jdbcTemplate.batchUpdate("update category set parent_id = ? where id = ?",
+                links, batchSize, (ps, link) -> {
+                    ps.setObject(1, link.parentId(), Types.BIGINT);
+                    ps.setLong(2, link.categoryId());
+                }).length;
+    }
+
+    /**
+     * Deletes categories in one statement. Their closure rows are deleted by the foreign key cascade.
+     *
+     * @param ids category IDs
+     * @return number of deleted categories
+     */
+    public int deleteAll(List<Long> ids) {
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("delete from category where id = any(?)");
+            ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * New parent of a category.
+     *
+     * @param categoryId category ID
+     * @param parentId   parent ID, null to make the category a root category
+     */
+    public record ParentLink(long categoryId, Long parentId) {
+    }
+}
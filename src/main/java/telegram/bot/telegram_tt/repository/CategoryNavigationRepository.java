@@ -0,0 +1,106 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repository for browsing a category tree one level at a time.
+ * Every page is read with one query on the (chat_id, parent_id) index.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryNavigationRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Loads one page of the children of a category together with the category itself.
+     *
+     * @param chatId   chat ID
+     * @param parentId category ID, null for the root categories
+     * @param offset   number of children to skip
+     * @param limit    maximum number of children
+     * @return the page; for a category that does not exist, a page without a parent and without children
+     */
+    public ChildrenPage findChildren(Long chatId, Long parentId, int offset, int limit) {
+        List<Row> rows = new ArrayList<>();
+        if (parentId == null) {
+            jdbcTemplate.query("""
+                    select c.id, c.name, c.parent_id, false,
+                           exists (select 1 from category g where g.chat_id = c.chat_id and g.parent_id = c.id)
+                    from category c
+                    where c.chat_id = ? and c.parent_id is null
+                    order by c.id
+                    limit ? offset ?
+                    """, rs -> {
+                rows.add(mapRow(rs));
+            }, chatId, limit + 1, offset);
+        } else {
+            // The first row is the category itself, the rest are its children
+            jdbcTemplate.query("""
+                    (select id, name, parent_id, true, false
+                     from category
+                     where chat_id = ? and id = ?)
+                    union all
+                    (select c.id, c.name, c.parent_id, false,
+                            exists (select 1 from category g where g.chat_id = c.chat_id and g.parent_id = c.id)
+                     from category c
+                     where c.chat_id = ? and c.parent_id = ?
+                     order by c.id
+                     limit ? offset ?)
+                    """, rs -> {
+                rows.add(mapRow(rs));
+            }, chatId, parentId, chatId, parentId, limit + 1, offset);
+        }
+
+        CategoryEntry self = null;
+        Long grandparentId = null;
+        List<CategoryEntry> children = new ArrayList<>(Math.min(rows.size(), limit));
+        for (Row row : rows) {
+            CategoryEntry entry = new CategoryEntry(row.id(), row.name(), row.hasChildren());
+            if (row.self()) {
+                self = entry;
+                grandparentId = row.parentId();
+            } else if (children.size() < limit) {
+                children.add(entry);
+            }
+        }
+        int childRows = rows.size() - (self != null ? 1 : 0);
+        return new ChildrenPage(self, grandparentId, children, childRows > limit);
+    }
+
+    private static Row mapRow(ResultSet rs) throws SQLException {
+        long parentId = rs.getLong(3);
+        return new Row(rs.getLong(1), rs.getString(2), rs.wasNull() ? null : parentId, rs.getBoolean(4), rs.getBoolean(5));
+    }
+
+    private record Row(Long id, String name, Long parentId, boolean self, boolean hasChildren) {
+    }
+
+    /**
+     * Category shown while browsing.
+     *
+     * @param id          category ID
+     * @param name        category name
+     * @param hasChildren whether the category has child categories
+     */
+    public record CategoryEntry(Long id, String name, boolean hasChildren) {
+    }
+
+    /**
+     * One page of the children of a category.
+     *
+     * @param parent        the browsed category, null for the root level or a category that no longer exists
+     * @param grandparentId parent ID of the browsed category, null if it is a root category
+     * @param children      children on this page
+     * @param hasMore       whether more children follow this page
+     */
+    public record ChildrenPage(CategoryEntry parent, Long grandparentId, List<CategoryEntry> children, boolean hasMore) {
+    }
+}
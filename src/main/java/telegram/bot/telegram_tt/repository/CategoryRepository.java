@@ -1,9 +1,13 @@
 package telegram.bot.telegram_tt.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import telegram.bot.telegram_tt.entity.Category;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,6 +27,15 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
      */
     Optional<Category> findByNameAndChatId(String name, Long chatId);
 
+    /**
+     * Method to find the categories of a chat with any of the given names in one query.
+     *
+     * @param chatId chat ID
+     * @param names category names
+     * @return List<Category> - categories found, in no particular order
+     */
+    List<Category> findByChatIdAndNameIn(Long chatId, Collection<String> names);
+
     /**
      * Method to get all root categories for a given chat.
      * Root categories are those that do not have a parent category.
@@ -31,4 +44,110 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
      * @return List<Category> - list of root categories
      */
     List<Category> findByParentIsNullAndChatId(Long chatId);
+
+    /**
+     * Method to get the subtree of one category as flat rows in one query, down to a maximum depth.
+     * The recursion stops at the requested depth, so deeper categories are never read.
+     * Rows are ordered depth-first like in findTreeRowsByChatId; depth is counted from the category itself.
+     *
+     * @param name category name
+     * @param chatId chat ID
+     * @param maxDepth maximum depth below the category, 0 for the category alone
+     * @return List<CategoryTreeRow> - the category and its descendants, empty if the category does not exist
+     */
+    @Query(value = """
+            with recursive tree as (
+                select id, name, parent_id, array[id] as path, 0 as depth
+                from category
+                where chat_id = :chatId and name = :name
+                union all
+                select c.id, c.name, c.parent_id, tree.path || c.id, tree.depth + 1
+                from category c
+                join tree on c.parent_id = tree.id
+                where tree.depth < :maxDepth and c.chat_id = :chatId and c.id <> all(tree.path)
+            )
+            select id, name, parent_id as parentId, depth
+            from tree
+            order by path
+            """, nativeQuery = true)
+    List<CategoryTreeRow> findSubtreeRows(@Param("name") String name, @Param("chatId") Long chatId,
+                                          @Param("maxDepth") int maxDepth);
+
+    /**
+     * Method to insert a root category in one statement.
+     * Nothing is inserted if a category with the same name already exists in the chat.
+     *
+     * @param name category name
+     * @param chatId chat ID
+     * @return number of inserted rows, 0 if the category already exists
+     */
+    @Modifying
+    @Query(value = """
+            insert into category (chat_id, name) values (:chatId, :name)
+            on conflict (chat_id, name) do nothing
+            """, nativeQuery = true)
+    int insertRootIfAbsent(@Param("name") String name, @Param("chatId") Long chatId);
+
+    /**
+     * Method to get all categories of a chat as flat rows in one query.
+     * Rows are ordered depth-first: every category is followed by its subtree, siblings are ordered by ID.
+     *
+     * @param chatId chat ID
+     * @return List<CategoryTreeRow> - categories reachable from the root categories, in depth-first order
+     */
+    @Query(value = """
+            with recursive tree as (
+                select id, name, parent_id, array[id] as path
+                from category
+                where chat_id = :chatId and parent_id is null
+                union all
+                select c.id, c.name, c.parent_id, tree.path || c.id
+                from category c
+                join tree on c.parent_id = tree.id
+            )
+            select id, name, parent_id as parentId, cardinality(path) - 1 as depth
+            from tree
+            order by path
+            """, nativeQuery = true)
+    List<CategoryTreeRow> findTreeRowsByChatId(@Param("chatId") Long chatId);
+
+    /**
+     * Method to attach a child category to a known parent category in one statement.
+     * The child is created if it does not exist yet, otherwise it is moved under the parent,
+     * unless the parent lies in the subtree of the child.
+     *
+     * @param parentId parent category ID
+     * @param child child category name
+     * @param chatId chat ID
+     * @return number of written rows, 0 if the child is already under the parent or the move would create a cycle
+     */
+    @Modifying
+    @Query(value = """
+            insert into category (chat_id, name, parent_id) values (:chatId, :child, :parentId)
+            on conflict (chat_id, name) do update set parent_id = excluded.parent_id
+            where category.parent_id is distinct from excluded.parent_id
+              and not exists (select 1 from category_closure cc
+                              where cc.ancestor_id = category.id and cc.descendant_id = excluded.parent_id)
+            """, nativeQuery = true)
+    int upsertChildOf(@Param("parentId") Long parentId, @Param("child") String child, @Param("chatId") Long chatId);
+
+    /**
+     * Method to delete a category together with all its descendants in one statement.
+     * The subtree is read from the closure table, so no entities are loaded and no parent links are walked.
+     *
+     * @param name category name
+     * @param chatId chat ID
+     * @return number of deleted rows, 0 if the category does not exist
+     */
+    @Modifying
+    @Query(value = """
+            delete from category
+            where id in (
+                select cc.descendant_id
+                from category c
+                join category_closure cc on cc.ancestor_id = c.id
+                where c.chat_id = :chatId and c.name = :name
+            )
+            """, nativeQuery = true)
+    int deleteSubtree(@Param("name") String name, @Param("chatId") Long chatId);
 }
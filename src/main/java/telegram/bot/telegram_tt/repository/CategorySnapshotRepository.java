@@ -0,0 +1,86 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for binary snapshots of category trees.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategorySnapshotRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stores a snapshot.
+     *
+     * @param chatId    chat ID
+     * @param nodeCount number of categories in the snapshot
+     * @param data      encoded tree
+     * @return snapshot ID
+     */
+    public long insert(Long chatId, int nodeCount, byte[] data) {
+        return jdbcTemplate.queryForObject("""
+                insert into category_snapshot (chat_id, node_count, data) values (?, ?, ?)
+                returning id
+                """, Long.class, chatId, nodeCount, data);
+    }
+
+    /**
+     * Loads the encoded tree of a snapshot.
+     *
+     * @param id     snapshot ID
+     * @param chatId chat ID, a snapshot of another chat is not found
+     * @return encoded tree, empty if there is no such snapshot
+     */
+    public Optional<byte[]> findData(long id, Long chatId) {
+        return jdbcTemplate.query("select data from category_snapshot where id = ? and chat_id = ?",
+                (rs, rowNum) -> rs.getBytes(1), id, chatId).stream().findFirst();
+    }
+
+    /**
+     * Lists the snapshots of a chat without their data.
+     *
+     * @param chatId chat ID
+     * @return snapshots, newest first
+     */
+    public List<SnapshotInfo> findByChatId(Long chatId) {
+        return jdbcTemplate.query("""
+                select id, node_count, octet_length(data) as size, created_at from category_snapshot
+                where chat_id = ? order by id desc
+                """, (rs, rowNum) -> new SnapshotInfo(rs.getLong("id"), rs.getInt("node_count"), rs.getInt("size"),
+                rs.getTimestamp("created_at").toLocalDateTime()), chatId);
+    }
+
+    /**
+     * Deletes all but the newest snapshots of a chat.
+     *
+     * @param chatId chat ID
+     * @param keep   number of snapshots to keep
+     * @return number of deleted snapshots
+     */
+    public int deleteAllButNewest(Long chatId, int keep) {
+        return jdbcTemplate.update("""
+                delete from category_snapshot
+                where chat_id = ? and id not in (
+                    select id from category_snapshot where chat_id = ? order by id desc limit ?)
+                """, chatId, chatId, keep);
+    }
+
+    /**
+     * Snapshot without its data.
+     *
+     * @param id        snapshot ID
+     * @param nodeCount number of categories
+     * @param size      size of the encoded tree in bytes
+     * @param createdAt creation time
+     */
+    public record SnapshotInfo(long id, int nodeCount, int size, LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,18 @@
+package telegram.bot.telegram_tt.repository;
+
+/**
+ * Flat projection of a category used to assemble category trees in memory.
+ */
+public interface CategoryTreeRow {
+
+    Long getId();
+
+    String getName();
+
+    Long getParentId();
+
+    /**
+     * Distance from the root category, 0 for root categories.
+     */
+    Integer getDepth();
+}
@@ -0,0 +1,44 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository for the per-chat category tree version.
+ * The version of a chat grows by one with every change of its category tree.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryTreeVersionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Method to get the current tree version of a chat.
+     *
+     * @param chatId chat ID
+     * @return version, 0 if the tree of the chat was never changed
+     */
+    public long findVersion(Long chatId) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "select version from category_tree_version where chat_id = ?", Long.class, chatId);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+
+    /**
+     * Method to increment the tree version of a chat.
+     *
+     * @param chatId chat ID
+     * @return new version
+     */
+    public long incrementVersion(Long chatId) {
+        return jdbcTemplate.queryForObject("""
+                insert into category_tree_version (chat_id, version) values (?, 1)
+                on conflict (chat_id) do update set version = category_tree_version.version + 1
+                returning version
+                """, Long.class, chatId);
+    }
+}
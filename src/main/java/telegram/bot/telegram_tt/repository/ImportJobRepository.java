@@ -0,0 +1,158 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import telegram.bot.telegram_tt.entity.ImportJobStatus;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for background import jobs and for undoing their changes.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImportJobRepository {
+
+    private static final RowMapper<ImportJob> ROW_MAPPER = (rs, rowNum) -> new ImportJob(
+            rs.getLong("id"),
+            rs.getLong("chat_id"),
+            ImportJobStatus.valueOf(rs.getString("status")),
+            rs.getString("file_path"),
+            (Integer) rs.getObject("status_message_id"),
+            rs.getInt("rows_total"),
+            rs.getInt("rows_done"),
+            rs.getInt("inserted"),
+            rs.getInt("linked"),
+            rs.getBoolean("delete_missing"),
+            rs.getString("sha256"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Creates a queued job.
+     *
+     * @param chatId        chat ID
+     * @param filePath      staged file to import
+     * @param sha256        SHA-256 of the file
+     * @param deleteMissing whether categories missing from the file are deleted
+     * @return job ID
+     */
+    public long create(Long chatId, String filePath, String sha256, boolean deleteMissing) {
+        return jdbcTemplate.queryForObject("""
+                insert into import_job (chat_id, status, file_path, sha256, delete_missing) values (?, ?, ?, ?, ?)
+                returning id
+                """, Long.class, chatId, ImportJobStatus.QUEUED.name(), filePath, sha256, deleteMissing);
+    }
+
+    public Optional<ImportJob> findById(long id) {
+        return jdbcTemplate.query("select * from import_job where id = ?", ROW_MAPPER, id).stream().findFirst();
+    }
+
+    /**
+     * Returns the jobs that were queued or running, e.g. when the application was stopped.
+     *
+     * @return unfinished jobs, oldest first
+     */
+    public List<ImportJob> findUnfinished() {
+        return jdbcTemplate.query("select * from import_job where status in (?, ?) order by id", ROW_MAPPER,
+                ImportJobStatus.QUEUED.name(), ImportJobStatus.RUNNING.name());
+    }
+
+    public void setStatusMessage(long id, int messageId) {
+        jdbcTemplate.update("update import_job set status_message_id = ?, updated_at = now() where id = ?", messageId, id);
+    }
+
+    public void markRunning(long id, int rowsTotal) {
+        jdbcTemplate.update("update import_job set status = ?, rows_total = ?, updated_at = now() where id = ?",
+                ImportJobStatus.RUNNING.name(), rowsTotal, id);
+    }
+
+    /**
+     * Records the progress of a job. Called in the transaction of the chunk, so progress and rows commit together.
+     */
+    public void updateProgress(long id, int rowsDone, int inserted, int linked) {
+        jdbcTemplate.update("""
+                update import_job set rows_done = ?, inserted = ?, linked = ?, updated_at = now() where id = ?
+                """, rowsDone, inserted, linked, id);
+    }
+
+    public void markFinished(long id, ImportJobStatus status, String error) {
+        jdbcTemplate.update("update import_job set status = ?, error = ?, updated_at = now() where id = ?",
+                status.name(), error, id);
+    }
+
+    /**
+     * Remembers the current parents of existing categories before an import moves them.
+     * Categories created by the import itself need no undo entry.
+     *
+     * @param id          job ID
+     * @param categoryIds categories about to be moved
+     * @param batchSize   number of rows sent per batch
+     * @return number of batches sent
+     */
+    public int recordUndo(long id, List<Long> categoryIds, int batchSize) {
+        return jdbcTemplate.batchUpdate("""
+                insert into import_job_undo (job_id, category_id, old_parent_id)
+                select ?, c.id, c.parent_id from category c
+                where c.id = ? and c.import_job_id is distinct from ?
+                on conflict do nothing
+                """, categoryIds, batchSize, (ps, categoryId) -> {
+            ps.setLong(1, id);
+            ps.setLong(2, categoryId);
+            ps.setLong(3, id);
+        }).length;
+    }
+
+    /**
+     * Undoes the committed changes of a job: moved categories get their old parents back
+     * and categories created by the job are deleted with everything below them.
+     * The subtrees are deleted in one statement, so no category is left pointing at a deleted parent.
+     *
+     * @param id job ID
+     * @return number of deleted categories
+     */
+    public int rollback(long id) {
+        jdbcTemplate.update("""
+                update category c set parent_id = u.old_parent_id
+                from import_job_undo u
+                where u.job_id = ? and c.id = u.category_id
+                """, id);
+        int deleted = jdbcTemplate.update("""
+                with recursive created as (
+                    select id from category where import_job_id = ?
+                    union
+                    select c.id from category c join created on c.parent_id = created.id
+                )
+                delete from category where id in (select id from created)
+                """, id);
+        jdbcTemplate.update("delete from import_job_undo where job_id = ?", id);
+        return deleted;
+    }
+
+    public void deleteUndo(long id) {
+        jdbcTemplate.update("delete from import_job_undo where job_id = ?", id);
+    }
+
+    /**
+     * Background import of one uploaded file.
+     *
+     * @param id              job ID
+     * @param chatId          chat ID
+     * @param status          current state
+     * @param filePath        staged file
+     * @param statusMessageId ID of the message showing the progress, null if it was not sent yet
+     * @param rowsTotal       number of planned changes, 0 until the file has been read
+     * @param rowsDone        number of changes committed
+     * @param inserted        number of categories created so far
+     * @param linked          number of parent links written so far
+     * @param deleteMissing   whether categories missing from the file are deleted
+     * @param sha256          SHA-256 of the file
+     */
+    public record ImportJob(long id, Long chatId, ImportJobStatus status, String filePath, Integer statusMessageId,
+                            int rowsTotal, int rowsDone, int inserted, int linked, boolean deleteMissing,
+                            String sha256) {
+    }
+}
@@ -0,0 +1,53 @@
+package telegram.bot.telegram_tt.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for the content hash of the last file imported into each chat.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UploadDigestRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Finds the tree version left behind by an earlier import of the same file.
+     *
+     * @param chatId        chat ID
+     * @param sha256        hex SHA-256 of the file
+     * @param deleteMissing whether the new upload deletes categories missing from the file;
+     *                      an earlier import without deletes does not cover it
+     * @return tree version after the earlier import, empty if the file is not the last one imported
+     */
+    public Optional<Long> findTreeVersion(Long chatId, String sha256, boolean deleteMissing) {
+        List<Long> versions = jdbcTemplate.queryForList("""
+                select tree_version from upload_digest
+                where chat_id = ? and sha256 = ? and (delete_missing or not ?)
+                """, Long.class, chatId, sha256, deleteMissing);
+        return versions.stream().findFirst();
+    }
+
+    /**
+     * Remembers an imported file together with the current tree version of the chat.
+     * Must be called in the transaction that finishes the import, so the version is the one the import left.
+     *
+     * @param chatId        chat ID
+     * @param sha256        hex SHA-256 of the file
+     * @param deleteMissing whether the import deleted categories missing from the file
+     */
+    public void save(Long chatId, String sha256, boolean deleteMissing) {
+        jdbcTemplate.update("""
+                insert into upload_digest (chat_id, sha256, tree_version, delete_missing)
+                select ?, ?, coalesce((select version from category_tree_version where chat_id = ?), 0), ?
+                on conflict (chat_id) do update
+                set sha256 = excluded.sha256, tree_version = excluded.tree_version,
+                    delete_missing = excluded.delete_missing, imported_at = now()
+                """, chatId, sha256, chatId, deleteMissing);
+    }
+}
@@ -0,0 +1,166 @@
+package telegram.bot.telegram_tt.service;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads (category, parent category) rows from a CSV or TSV file.
+ *
+ * The file is decoded as UTF-8 into a fixed char buffer and parsed by a small state machine, so only a buffer
+ * of the file is in memory at a time. Per row only the two strings handed to the handler are allocated;
+ * further columns are skipped without being copied. The first row holds the headers and is skipped.
+ */
+@Component
+public class CategoryDelimitedReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Reads all rows of the file, skipping the header row and blank rows.
+     * Rows without both a category and a parent category are reported to {@link CategoryRowHandler#skipped}.
+     *
+     * @param file    CSV or TSV file
+     * @param format  format of the file
+     * @param handler receives the rows in file order
+     * @throws IOException if the file cannot be read
+     */
+    public void read(Path file, DelimitedFormat format, CategoryRowHandler handler) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            new Parser(format, handler).parse(reader);
+        }
+    }
+
+    /**
+     * Parser state, kept across buffer refills so quotes and line breaks may span them.
+     */
+    private static final class Parser {
+        private final char separator;
+        private final boolean quoted;
+        private final CategoryRowHandler handler;
+        private final StringBuilder field = new StringBuilder(64);
+        private String category;
+        private int column;
+        private boolean inQuotes;
+        private boolean afterQuote;
+        private boolean atFieldStart = true;
+        private boolean skipLineFeed;
+        private boolean header = true;
+        private int rowNumber = 1;
+
+        private Parser(DelimitedFormat format, CategoryRowHandler handler) {
+            this.separator = format.getSeparator();
+            this.quoted = format.isQuoted();
+            this.handler = handler;
+        }
+
+        private void parse(Reader reader) throws IOException {
+            char[] buffer = new char[BUFFER_SIZE];
+            boolean first = true;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                int start = 0;
+                if (first && read > 0) {
+                    first = false;
+                    if (buffer[0] == BYTE_ORDER_MARK) {
+                        start = 1;
+                    }
+                }
+                for (int i = start; i < read; i++) {
+                    accept(buffer[i]);
+                }
+            }
+            if (column > 0 || field.length() > 0 || inQuotes || afterQuote) {
+                endRow();
+            }
+        }
+
+        private void accept(char c) {
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    return;
+                }
+            }
+            if (inQuotes) {
+                if (c == '"') {
+                    inQuotes = false;
+                    afterQuote = true;
+                } else {
+                    append(c);
+                }
+                return;
+            }
+            if (afterQuote) {
+                afterQuote = false;
+                if (c == '"') {
+                    // A doubled quote inside a quoted field stands for one quote
+                    append('"');
+                    inQuotes = true;
+                    return;
+                }
+            }
+            if (c == separator) {
+                endField();
+            } else if (c == '\n') {
+                endRow();
+            } else if (c == '\r') {
+                endRow();
+                skipLineFeed = true;
+            } else if (c == '"' && quoted && atFieldStart) {
+                inQuotes = true;
+                atFieldStart = false;
+            } else {
+                append(c);
+            }
+        }
+
+        private void append(char c) {
+            atFieldStart = false;
+            // Only the first two columns are needed
+            if (column < 2) {
+                field.append(c);
+            }
+        }
+
+        private void endField() {
+            if (column == 0) {
+                category = field.toString();
+            } else if (column == 1 && !header) {
+                String parentCategory = field.toString();
+                if (!category.isEmpty() && !parentCategory.isEmpty()) {
+                    handler.row(category, parentCategory);
+                } else if (!category.isEmpty() || !parentCategory.isEmpty()) {
+                    handler.skipped(rowNumber);
+                }
+            }
+            field.setLength(0);
+            atFieldStart = true;
+            column++;
+        }
+
+        private void endRow() {
+            if (column == 0 && field.length() == 0 && !afterQuote) {
+                // Empty line
+                return;
+            }
+            endField();
+            if (column == 1 && !header && !category.isEmpty()) {
+                // A row of one column, e.g. from a file with another separator
+                handler.skipped(rowNumber);
+            }
+            header = false;
+            rowNumber++;
+            category = null;
+            column = 0;
+            inQuotes = false;
+            afterQuote = false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package telegram.bot.telegram_tt.service;
+
+import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes a category tree as CSV or TSV, one (category, parent category) row per category in depth-first order.
+ * The rows go straight to the writer, nothing but the names of the snapshot is held in memory.
+ */
+@Component
+public class CategoryDelimitedWriter {
+
+    /**
+     * Writes the header row and one row per category.
+     *
+     * @param snapshot category tree
+     * @param writer   receives the text, should be buffered; not closed by this method
+     * @param format   format to write
+     * @throws IOException if the text cannot be written
+     */
+    public void write(CategoryTreeSnapshot snapshot, Writer writer, DelimitedFormat format) throws IOException {
+        writeRow(writer, format, "Category", "Parent Category");
+        try {
+            snapshot.depthFirst((node, depth) -> {
+                int parent = snapshot.parent(node);
+                try {
+                    writeRow(writer, format, snapshot.name(node),
+                            parent != CategoryTreeSnapshot.NONE ? snapshot.name(parent) : "-");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeRow(Writer writer, DelimitedFormat format, String category, String parentCategory)
+            throws IOException {
+        writeField(writer, format, category);
+        writer.write(format.getSeparator());
+        writeField(writer, format, parentCategory);
+        writer.write('\n');
+    }
+
+    private static void writeField(Writer writer, DelimitedFormat format, String value) throws IOException {
+        if (!needsEscaping(value, format)) {
+            writer.write(value);
+            return;
+        }
+        if (format.isQuoted()) {
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        } else {
+            // TSV has no quoting, separators and line breaks inside a name become spaces
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                writer.write(c == format.getSeparator() || c == '\n' || c == '\r' ? ' ' : c);
+            }
+        }
+    }
+
+    private static boolean needsEscaping(String value, DelimitedFormat format) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == format.getSeparator() || c == '\n' || c == '\r' || (format.isQuoted() && c == '"')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,68 +1,139 @@
 package telegram.bot.telegram_tt.service;
 
 import lombok.RequiredArgsConstructor;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import telegram.bot.telegram_tt.entity.Category;
-import telegram.bot.telegram_tt.repository.CategoryRepository;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Service for downloading categories from the database in Excel format.
+ * Service for downloading categories from the database in Excel, CSV or TSV format.
  */
 @Service
 @RequiredArgsConstructor
 public class CategoryDownloadService {
 
-    private final CategoryRepository categoryRepository;
     private static final Logger logger = LoggerFactory.getLogger(CategoryDownloadService.class);
 
+    /**
+     * Maximum column width in characters.
+     */
+    private static final int MAX_COLUMN_CHARS = 100;
+
+    private final CategoryTreeCache categoryTreeCache;
+    private final CategoryDelimitedWriter categoryDelimitedWriter;
+
+    /**
+     * Number of rows kept in memory while the workbook is written.
+     */
+    @Value("${category.export.row-window:100}")
+    private int rowWindow;
+
     /**
      * Creates an Excel file with the category tree for a given chat.
      *
      * Uses the Template Pattern: defines a general algorithm for file creation
      * (initialization, header addition, data writing, finalization).
      *
+     * The workbook is streamed: only a fixed window of rows is kept in memory and the result is written
+     * to a temporary file, so memory use does not grow with the size of the tree.
+     *
      * @param chatId chat identifier
-     * @return byte array representing the Excel file
+     * @return temporary file with the Excel document, to be deleted by the caller
      * @throws IOException if any issues occur during file writing
+     * @throws ExportRefusedException if the tree has more categories than a sheet has rows
      */
-    public byte[] createCategoryTreeExcel(Long chatId) throws IOException {
+    public Path createCategoryTreeExcel(Long chatId) throws IOException {
         logger.info("Starting to create category tree Excel for chatId: {}", chatId);
 
-        // Get all root categories for the chat
-        List<Category> rootCategories = categoryRepository.findByParentIsNullAndChatId(chatId);
-        try (Workbook workbook = new XSSFWorkbook()) {
+        // Get the whole category tree of the chat from the cache or with one query
+        CategoryTreeSnapshot snapshot = categoryTreeCache.get(chatId);
+        // One row per category below the header row
+        int maxCategories = SpreadsheetVersion.EXCEL2007.getMaxRows() - 1;
+        if (snapshot.size() > maxCategories) {
+            logger.warn("Category tree of chatId {} has {} categories, too many for one sheet", chatId, snapshot.size());
+            throw new ExportRefusedException(("The tree has %d categories, but an Excel sheet holds at most %d. "
+                    + "Use /download csv or /download tsv instead.").formatted(snapshot.size(), maxCategories));
+        }
+        Path file = Files.createTempFile("category-export-", ".xlsx");
+        SXSSFWorkbook workbook = new SXSSFWorkbook(rowWindow);
+        workbook.setCompressTempFiles(true);
+        boolean created = false;
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
             Sheet sheet = workbook.createSheet("Category Tree");
             int[] rowIndex = {0};
+            int[] maxNameLength = {"Parent Category".length()};
 
             // Step 1: Add headers — encapsulated in createHeaderRow
             createHeaderRow(sheet, rowIndex);
 
-            // Step 2: Write data — encapsulated in writeCategoryToSheet
-            for (Category rootCategory : rootCategories) {
-                writeCategoryToSheet(rootCategory, sheet, rowIndex);
-            }
+            // Step 2: Write data — encapsulated in writeCategoryToSheet, categories come in depth-first order
+            snapshot.depthFirst((node, depth) -> {
+                writeCategoryToSheet(snapshot, node, sheet, rowIndex, maxNameLength);
+                return true;
+            });
 
-            // Step 3: Final processing and writing to stream
-            sheet.autoSizeColumn(0);  // Auto-adjust column width
-            sheet.autoSizeColumn(1);
+            // Step 3: Final processing and writing to the file.
+            // Column widths are estimated from the longest name, autoSizeColumn would have to measure every row
+            int width = Math.min(MAX_COLUMN_CHARS, maxNameLength[0] + 2) * 256;
+            sheet.setColumnWidth(0, width);
+            sheet.setColumnWidth(1, width);
 
-            // Write data to a byte array and return
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                workbook.write(outputStream);
-                logger.info("Category tree Excel file created successfully for chatId: {}", chatId);
-                return outputStream.toByteArray();
-            }
-        } catch (IOException e) {
+            workbook.write(outputStream);
+            created = true;
+            logger.info("Category tree Excel file created successfully for chatId: {}", chatId);
+            return file;
+        } catch (IOException | RuntimeException e) {
             logger.error("Error occurred while creating Excel file for chatId: {}", chatId, e);
             throw e; // Re-throw the exception
+        } finally {
+            // The caller only deletes the file it gets back, so a failed export removes it here
+            if (!created) {
+                Files.deleteIfExists(file);
+            }
+            // Remove the temporary files of the streamed rows
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * Creates a CSV or TSV file with the category tree for a given chat.
+     * The rows are written straight through a buffered writer, no workbook model is involved.
+     *
+     * @param chatId chat identifier
+     * @param format text format of the file
+     * @return temporary file with the document, to be deleted by the caller
+     * @throws IOException if any issues occur during file writing
+     */
+    public Path createCategoryTreeDelimited(Long chatId, DelimitedFormat format) throws IOException {
+        logger.info("Starting to create category tree {} for chatId: {}", format, chatId);
+        CategoryTreeSnapshot snapshot = categoryTreeCache.get(chatId);
+        Path file = Files.createTempFile("category-export-", "." + format.getExtension());
+        boolean created = false;
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            categoryDelimitedWriter.write(snapshot, writer, format);
+            created = true;
+            logger.info("Category tree {} file created successfully for chatId: {}", format, chatId);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error occurred while creating {} file for chatId: {}", format, chatId, e);
+            throw e;
+        } finally {
+            if (!created) {
+                Files.deleteIfExists(file);
+            }
         }
     }
 
@@ -92,23 +163,24 @@ public class CategoryDownloadService {
     }
 
     /**
-     * Recursively writes a category and its subcategories to the Excel sheet.
+     * Writes one category of the snapshot to the Excel sheet.
      *
-     * Uses the Template Pattern: adds categories according to the hierarchy,
-     * but the recursive logic can be replaced if the category structure changes.
+     * Uses the Template Pattern: the traversal order is decided by the snapshot,
+     * this step only defines how a single category is written.
      *
-     * @param category the category to write
+     * @param snapshot the category tree
+     * @param node the index of the category to write
      * @param sheet the sheet to write the category to
      * @param rowIndex the current row index
+     * @param maxNameLength the length of the longest name written so far
      */
-    private void writeCategoryToSheet(Category category, Sheet sheet, int[] rowIndex) {
+    private void writeCategoryToSheet(CategoryTreeSnapshot snapshot, int node, Sheet sheet, int[] rowIndex,
+                                      int[] maxNameLength) {
+        String name = snapshot.name(node);
+        int parent = snapshot.parent(node);
         Row row = sheet.createRow(rowIndex[0]++);
-        row.createCell(0).setCellValue(category.getName());
-        row.createCell(1).setCellValue(category.getParent() != null ? category.getParent().getName() : "-");
-
-        // Composite Pattern: recursive traversal of subcategories (tree)
-        for (Category child : category.getChildren()) {
-            writeCategoryToSheet(child, sheet, rowIndex);
-        }
+        row.createCell(0).setCellValue(name);
+        row.createCell(1).setCellValue(parent != CategoryTreeSnapshot.NONE ? snapshot.name(parent) : "-");
+        maxNameLength[0] = Math.max(maxNameLength[0], name.length());
     }
 }
@@ -0,0 +1,183 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Reads (category, parent category) rows from the "Category Tree" sheet of an Excel file.
+ *
+ * .xlsx files are read with the POI event model: the sheet XML is parsed with SAX and every row is handed
+ * to the handler as soon as it is parsed, so no workbook object model is built.
+ * .xls files are read with the usual workbook object model.
+ */
+@Component
+@Slf4j
+public class CategoryExcelReader {
+
+    public static final String SHEET_NAME = "Category Tree";
+
+    /**
+     * Reads all rows of the category sheet, skipping the header row and blank rows.
+     * Rows with only one of the two cells are reported to {@link CategoryRowHandler#skipped}.
+     * The file is opened directly, so POI reads the zip entries it needs instead of buffering the whole file.
+     *
+     * @param file    Excel file
+     * @param handler receives the rows in file order
+     * @throws IOException if the file cannot be read
+     */
+    public void read(Path file, CategoryRowHandler handler) throws IOException {
+        if (FileMagic.valueOf(file.toFile()) == FileMagic.OOXML) {
+            try (OPCPackage opcPackage = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+                readXlsx(opcPackage, handler);
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+                throw new IOException("Error reading Excel file.", e);
+            }
+        } else {
+            readWorkbook(file, handler);
+        }
+    }
+
+    /**
+     * Streams the category sheet of an .xlsx package.
+     */
+    private void readXlsx(OPCPackage opcPackage, CategoryRowHandler handler)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        XSSFReader reader = new XSSFReader(opcPackage);
+        ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage, false);
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            try (InputStream sheet = sheets.next()) {
+                if (SHEET_NAME.equals(sheets.getSheetName())) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, sharedStrings,
+                            new RowCollector(handler), new DataFormatter(), false));
+                    parser.parse(new InputSource(sheet));
+                    return;
+                }
+            }
+        }
+        throw new RuntimeException("Sheet '" + SHEET_NAME + "' not found in Excel file.");
+    }
+
+    /**
+     * Reads the category sheet through the workbook object model. Used for .xls files.
+     */
+    private void readWorkbook(Path file, CategoryRowHandler handler) throws IOException {
+        try (Workbook workbook = WorkbookFactory.create(file.toFile(), null, true)) {
+            Sheet sheet = workbook.getSheet(SHEET_NAME);
+
+            // Checks if the sheet "Category Tree" exists
+            if (sheet == null) {
+                throw new RuntimeException("Sheet '" + SHEET_NAME + "' not found in Excel file.");
+            }
+
+            // Iterates over rows in the sheet
+            for (int rowIndex = 1; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
+                Row row = sheet.getRow(rowIndex);
+
+                if (row == null) continue;
+
+                Cell categoryCell = row.getCell(0);
+                Cell parentCell = row.getCell(1);
+
+                String category = categoryCell != null ? categoryCell.getStringCellValue() : null;
+                String parentCategory = parentCell != null ? parentCell.getStringCellValue() : null;
+                handleRow(handler, rowIndex, category, parentCategory);
+            }
+        }
+    }
+
+    /**
+     * Hands a row to the handler, or reports it as skipped if one of its two cells is empty.
+     *
+     * @param rowIndex zero-based row index
+     */
+    private static void handleRow(CategoryRowHandler handler, int rowIndex, String category, String parentCategory) {
+        boolean hasCategory = category != null && !category.isEmpty();
+        boolean hasParent = parentCategory != null && !parentCategory.isEmpty();
+        if (hasCategory && hasParent) {
+            handler.row(category, parentCategory);
+        } else if (hasCategory || hasParent) {
+            handler.skipped(rowIndex + 1);
+        }
+    }
+
+    /**
+     * Collects the first two cells of every row reported by the SAX sheet handler.
+     */
+    private static final class RowCollector implements SheetContentsHandler {
+        private final CategoryRowHandler handler;
+        private String category;
+        private String parentCategory;
+        private int nextColumn;
+
+        private RowCollector(CategoryRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            category = null;
+            parentCategory = null;
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            // The first row holds the headers
+            if (rowNum > 0) {
+                handleRow(handler, rowNum, category, parentCategory);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? columnOf(cellReference) : nextColumn;
+            nextColumn = column + 1;
+            if (column == 0) {
+                category = formattedValue;
+            } else if (column == 1) {
+                parentCategory = formattedValue;
+            }
+        }
+
+        /**
+         * Returns the zero-based column of a cell reference such as "B12" without allocating.
+         */
+        private static int columnOf(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char c = cellReference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Reads (category, parent category) rows from an uploaded file of any supported format.
+ * CSV and TSV files are recognized by their extension and read as plain text; everything else goes to POI.
+ */
+@Component
+@RequiredArgsConstructor
+public class CategoryFileReader {
+
+    private final CategoryExcelReader categoryExcelReader;
+    private final CategoryDelimitedReader categoryDelimitedReader;
+
+    /**
+     * Reads all rows of a category file, skipping the header row.
+     *
+     * @param file    .xls, .xlsx, .csv or .tsv file
+     * @param handler receives the rows in file order
+     * @throws IOException if the file cannot be read
+     */
+    public void read(Path file, CategoryRowHandler handler) throws IOException {
+        Optional<DelimitedFormat> format = DelimitedFormat.fromFileName(file.getFileName().toString());
+        if (format.isPresent()) {
+            categoryDelimitedReader.read(file, format.get(), handler);
+        } else {
+            categoryExcelReader.read(file, handler);
+        }
+    }
+}
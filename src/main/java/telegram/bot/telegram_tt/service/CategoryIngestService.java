@@ -0,0 +1,138 @@
+package telegram.bot.telegram_tt.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import telegram.bot.telegram_tt.repository.CategoryClosureRepository;
+import telegram.bot.telegram_tt.repository.CategoryJdbcRepository;
+import telegram.bot.telegram_tt.repository.CategoryJdbcRepository.ParentLink;
+import telegram.bot.telegram_tt.repository.ImportJobRepository;
+import telegram.bot.telegram_tt.service.ImportPlan.Move;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the changes of an import plan to the database in bulk.
+ *
+ * The plan is made by the {@link ImportPlanner} against the cached tree of the chat, so only the difference
+ * is written: new categories are inserted with JDBC batches and parent links are applied with batched updates.
+ * The closure rows of the written categories and their subtrees are then recomputed with two set-based
+ * statements. Import jobs apply their plan chunk by chunk, see {@link #applyChunk}.
+ */
+@Service
+public class CategoryIngestService {
+
+    private final CategoryJdbcRepository categoryJdbcRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
+    private final ImportJobRepository importJobRepository;
+    private final int batchSize;
+
+    public CategoryIngestService(CategoryJdbcRepository categoryJdbcRepository,
+                                 CategoryClosureRepository categoryClosureRepository,
+                                 ImportJobRepository importJobRepository,
+                                 @Value("${category.ingest.batch-size:1000}") int batchSize) {
+        this.categoryJdbcRepository = categoryJdbcRepository;
+        this.categoryClosureRepository = categoryClosureRepository;
+        this.importJobRepository = importJobRepository;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Applies a slice of an import plan together with its closure rows. Must run inside a transaction.
+     * The tree version is left to the caller.
+     *
+     * @param inserts     names of the categories to create
+     * @param moves       parents to set; a parent must exist in the tree or be created by this or an earlier chunk
+     * @param tree        tree the plan was made for, resolves the IDs of existing categories
+     * @param createdIds  name to ID map of the categories created by earlier chunks, categories created here are added
+     * @param chatId      chat ID
+     * @param importJobId import job applying the plan, null outside of import jobs. New categories are tagged
+     *                    with it and moved categories record their old parent, so the job can be rolled back
+     * @return statistics of the chunk
+     */
+    public ChunkResult applyChunk(List<String> inserts, List<Move> moves, CategoryTreeSnapshot tree,
+                                  Map<String, Long> createdIds, Long chatId, Long importJobId) {
+        int roundTrips = 0;
+
+        // Categories whose closure rows change: the new ones and those that get a parent
+        List<Long> touchedIds = new ArrayList<>(inserts.size() + moves.size());
+
+        // Insert new categories
+        if (!inserts.isEmpty()) {
+            List<Long> newIds = categoryJdbcRepository.allocateIds(inserts.size());
+            touchedIds.addAll(newIds);
+            List<Map.Entry<String, Long>> rows = new ArrayList<>(inserts.size());
+            for (int i = 0; i < inserts.size(); i++) {
+                createdIds.put(inserts.get(i), newIds.get(i));
+                rows.add(Map.entry(inserts.get(i), newIds.get(i)));
+            }
+            roundTrips += 1 + categoryJdbcRepository.insertAll(chatId, rows, importJobId, batchSize);
+        }
+
+        // Link categories to their parents
+        int moved = 0;
+        if (!moves.isEmpty()) {
+            List<ParentLink> parentLinks = new ArrayList<>(moves.size());
+            List<Long> movedIds = new ArrayList<>();
+            for (Move move : moves) {
+                long categoryId = idOf(move.category(), tree, createdIds);
+                Long parentId = move.parent() != null ? idOf(move.parent(), tree, createdIds) : null;
+                parentLinks.add(new ParentLink(categoryId, parentId));
+                touchedIds.add(categoryId);
+                if (move.existing()) {
+                    movedIds.add(categoryId);
+                }
+            }
+            if (importJobId != null && !movedIds.isEmpty()) {
+                // Existing categories remember their old parent before it is overwritten
+                roundTrips += importJobRepository.recordUndo(importJobId, movedIds, batchSize);
+                moved = movedIds.size();
+            }
+            roundTrips += categoryJdbcRepository.updateParents(parentLinks, batchSize);
+        }
+
+        categoryClosureRepository.refresh(touchedIds);
+        roundTrips += touchedIds.isEmpty() ? 0 : 2;
+
+        // One ID reservation, one statement per inserted, recorded or linked row and two closure statements
+        int statements = (inserts.isEmpty() ? 0 : 1) + inserts.size() + moved + moves.size()
+                + (touchedIds.isEmpty() ? 0 : 2);
+        return new ChunkResult(inserts.size(), moves.size(), statements, roundTrips);
+    }
+
+    /**
+     * Deletes the categories an import plan removes. Must run inside a transaction.
+     *
+     * @param ids category IDs
+     * @return number of deleted categories
+     */
+    public int applyDeletes(List<Long> ids) {
+        return ids.isEmpty() ? 0 : categoryJdbcRepository.deleteAll(ids);
+    }
+
+    private static long idOf(String name, CategoryTreeSnapshot tree, Map<String, Long> createdIds) {
+        Long id = createdIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        int node = tree.indexOf(name);
+        if (node == CategoryTreeSnapshot.NONE) {
+            // The planner creates every category it links, so this means the plan does not match the tree
+            throw new IllegalStateException("Category " + name + " is neither in the tree nor created by the import.");
+        }
+        return tree.id(node);
+    }
+
+    /**
+     * Statistics of one chunk of an ingest.
+     *
+     * @param inserted   number of inserted categories
+     * @param linked     number of parent links written
+     * @param statements number of SQL statements executed
+     * @param roundTrips number of SQL round trips, counting each JDBC batch as one
+     */
+    public record ChunkResult(int inserted, int linked, int statements, int roundTrips) {
+    }
+}
@@ -0,0 +1,11 @@
+package telegram.bot.telegram_tt.service;
+
+// Receives the rows of an uploaded category file one at a time
+@FunctionalInterface
+public interface CategoryRowHandler {
+    void row(String category, String parentCategory);
+
+    // Called instead of row() for a row that has only one of category and parent category; rowNumber is 1-based
+    default void skipped(int rowNumber) {
+    }
+}
@@ -0,0 +1,81 @@
+package telegram.bot.telegram_tt.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Collects the rows of an uploaded file for planning an import.
+ * A later row of the same category replaces an earlier one. Rows the reader skipped are counted,
+ * and the numbers of the first few are kept, so the user learns why a file imported less than expected.
+ */
+public class CategoryRows implements CategoryRowHandler {
+
+    private static final int REPORTED_SKIPPED_ROWS = 5;
+
+    private final LinkedHashMap<String, String> rows = new LinkedHashMap<>();
+    private final List<Integer> skippedRowNumbers = new ArrayList<>();
+    private final int progressInterval;
+    private final IntConsumer progress;
+    private int skipped;
+
+    public CategoryRows() {
+        this(Integer.MAX_VALUE, rows -> { });
+    }
+
+    /**
+     * @param progressInterval number of rows between two calls of the progress callback
+     * @param progress         receives the number of rows collected so far
+     */
+    public CategoryRows(int progressInterval, IntConsumer progress) {
+        this.progressInterval = progressInterval;
+        this.progress = progress;
+    }
+
+    @Override
+    public void row(String category, String parentCategory) {
+        rows.put(category, parentCategory);
+        if (rows.size() % progressInterval == 0) {
+            progress.accept(rows.size());
+        }
+    }
+
+    @Override
+    public void skipped(int rowNumber) {
+        skipped++;
+        if (skippedRowNumbers.size() < REPORTED_SKIPPED_ROWS) {
+            skippedRowNumbers.add(rowNumber);
+        }
+    }
+
+    /**
+     * Returns the collected rows: map from category name to parent name, "-" for root categories.
+     */
+    public LinkedHashMap<String, String> getRows() {
+        return rows;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Describes the skipped rows for the user, empty if no row was skipped.
+     */
+    public String describeSkipped() {
+        if (skipped == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("%d rows skipped because they do not have both a category and a parent (row %s"
+                .formatted(skipped, skippedRowNumbers.get(0)));
+        for (int i = 1; i < skippedRowNumbers.size(); i++) {
+            text.append(", ").append(skippedRowNumbers.get(i));
+        }
+        text.append(skipped > skippedRowNumbers.size() ? ", …)." : ").");
+        if (rows.isEmpty()) {
+            text.append(" Check that the file has two columns; CSV files must be separated by commas.");
+        }
+        return text.toString();
+    }
+}
@@ -1,13 +1,17 @@
 package telegram.bot.telegram_tt.service;
 
 import telegram.bot.telegram_tt.entity.Category;
+import telegram.bot.telegram_tt.repository.CategoryNavigationRepository.ChildrenPage;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface CategoryService {
     String addRootCategory(String name, Long chatId);
-    String addChildCategory(String name, String child, Long chatId);
+    String addChildCategory(ParentCategory parent, String child, Long chatId);
     String removeCategory(String name, Long chatId);
     boolean categoryExists(String name, Long chatId);
     List<Category> findByParentIsNullAndChatId(Long chatId);
-    String viewCategoryTree(Long chatId);
+    ChildrenPage findChildren(Long chatId, Long parentId, int offset, int limit);
+    void streamCategoryTree(Long chatId, int page, int maxChunkLength, Consumer<String> sink);
+    void streamSubtree(String name, Long chatId, int maxDepth, int maxChunkLength, Consumer<String> sink);
 }
@@ -5,10 +5,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import telegram.bot.telegram_tt.entity.Category;
+import telegram.bot.telegram_tt.repository.CategoryClosureRepository;
+import telegram.bot.telegram_tt.repository.CategoryNavigationRepository;
+import telegram.bot.telegram_tt.repository.CategoryNavigationRepository.ChildrenPage;
 import telegram.bot.telegram_tt.repository.CategoryRepository;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+import telegram.bot.telegram_tt.tree.ChunkedTreeWriter;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.function.Consumer;
 
 
 /**
@@ -20,6 +25,11 @@ import java.util.Optional;
 @Slf4j
 public class CategoryServiceImpl implements CategoryService {
     private final CategoryRepository categoryRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
+    private final CategoryNavigationRepository categoryNavigationRepository;
+    private final CategoryTreeVersionService categoryTreeVersionService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final CategoryTreeLoader categoryTreeLoader;
 
     /**
      * Adding a root category.
@@ -33,13 +43,14 @@ public class CategoryServiceImpl implements CategoryService {
     public String addRootCategory(String name, Long chatId) {
         log.info("Attempting to add root category with name: {} for chatId: {}", name, chatId);
 
-        boolean check = categoryRepository.findByNameAndChatId(name, chatId).isPresent();
-        if (check) {
+        // One statement: the unique (chat_id, name) constraint decides whether the category already exists
+        if (categoryRepository.insertRootIfAbsent(name, chatId) == 0) {
             log.warn("Category with name {} already exists for chatId: {}", name, chatId);
             return "Category with name " + name + " already exists. Please enter another name for the root category.";
         }
-        Category category = createCategory(name, chatId);
-        categoryRepository.save(category);
+        categoryClosureRepository.insertRoot(name, chatId);
+        categoryTreeVersionService.bump(chatId);
+        categoryTreeCache.invalidate(chatId);
         log.info("Root category with name: {} added successfully for chatId: {}", name, chatId);
         return "Successfully added root category with name: " + name;
     }
@@ -59,16 +70,18 @@ public class CategoryServiceImpl implements CategoryService {
     }
 
     /**
-     * Adding a child category.
+     * Adding a child category to a parent that has already been resolved.
+     * Needs no parent lookup, so the write takes a fixed number of statements.
      *
-     * @param name  parent category name
+     * @param parent parent category
      * @param child child category name
      * @param chatId chat identifier
      * @return result message
      */
     @Override
     @Transactional
-    public String addChildCategory(String name, String child, Long chatId) {
+    public String addChildCategory(ParentCategory parent, String child, Long chatId) {
+        String name = parent.name();
         log.info("Attempting to add child category with name: {} under parent category: {} for chatId: {}", child, name, chatId);
 
         if (name.equals(child)) {
@@ -76,40 +89,22 @@ public class CategoryServiceImpl implements CategoryService {
             return "Please enter a correct category name.";
         }
 
-        Optional<Category> parentOpt = categoryRepository.findByNameAndChatId(name, chatId);
-        if (parentOpt.isEmpty()) {
-            log.warn("Parent category with name {} does not exist for chatId: {}", name, chatId);
-            return "Category with name " + name + " does not exist. Please specify an existing parent category.";
-        }
-        Category parentCategory = parentOpt.get();
-        Category childCategory = findOrCreateChildCategory(child, chatId);
-
-        // Checking if the child category is already assigned to the same parent category
-        if (childCategory.getParent() != null && childCategory.getParent().getId().equals(parentCategory.getId())) {
+        if (categoryRepository.upsertChildOf(parent.id(), child, chatId) == 0) {
+            // Nothing was written: the child is already under the parent or the move makes a cycle
+            if (categoryClosureRepository.isUnder(name, child, chatId)) {
+                log.warn("Category {} is a descendant of {} for chatId: {}", name, child, chatId);
+                return "Category %s is inside %s. A category cannot be moved under its own descendant.".formatted(name, child);
+            }
             log.warn("The category {} is already a child of the parent category {} for chatId: {}", child, name, chatId);
             return "Please enter a valid category.";
         }
-
-        // Setting the parent-child relationship and saving the changes
-        childCategory.setParent(parentCategory);
-        parentCategory.getChildren().add(childCategory);
-        categoryRepository.save(childCategory);
+        categoryClosureRepository.attachToParent(child, chatId);
+        categoryTreeVersionService.bump(chatId);
+        categoryTreeCache.invalidate(chatId);
         log.info("Successfully added child category: {} to parent category: {} for chatId: {}", child, name, chatId);
         return "Successfully added child: %s to parent: %s".formatted(child, name);
     }
 
-    /**
-     * Finds or creates a child category.
-     *
-     * @param child child category name
-     * @param chatId chat identifier
-     * @return found or created child category
-     */
-    private Category findOrCreateChildCategory(String child, Long chatId) {
-        return categoryRepository.findByNameAndChatId(child, chatId)
-                .orElseGet(() -> createCategory(child, chatId)); // Uses Factory Pattern
-    }
-
     /**
      * Removing a category.
      *
@@ -122,19 +117,13 @@ public class CategoryServiceImpl implements CategoryService {
     public String removeCategory(String name, Long chatId) {
         log.info("Attempting to remove category with name: {} for chatId: {}", name, chatId);
 
-        Optional<Category> categoryOpt = categoryRepository.findByNameAndChatId(name, chatId);
-        if (categoryOpt.isPresent()) {
-            Category category = categoryOpt.get();
-
-            // Removing the category from the parent's list of children if the category has a parent
-            if (category.getParent() != null) {
-                category.getParent().getChildren().remove(category);
-                categoryRepository.save(category.getParent());
-            }
-
-            categoryRepository.delete(category);
-            log.info("Successfully removed category with name: {} for chatId: {}", name, chatId);
-            return "Successfully removed category with name: " + name;
+        // The category and its whole subtree are deleted with one statement
+        int removed = categoryRepository.deleteSubtree(name, chatId);
+        if (removed > 0) {
+            categoryTreeVersionService.bump(chatId);
+            categoryTreeCache.invalidate(chatId);
+            log.info("Successfully removed category with name: {} and {} descendants for chatId: {}", name, removed - 1, chatId);
+            return "Successfully removed category with name: %s (%d categories removed)".formatted(name, removed);
         }
         log.warn("Category with name {} does not exist for chatId: {}", name, chatId);
         return "Category with name " + name + " does not exist. Please enter an existing category.";
@@ -149,6 +138,9 @@ public class CategoryServiceImpl implements CategoryService {
      */
     @Override
     public boolean categoryExists(String name, Long chatId) {
+        if (categoryTreeCache.isEnabled()) {
+            return categoryTreeCache.get(chatId).contains(name);
+        }
         return categoryRepository.findByNameAndChatId(name, chatId).isPresent();
     }
 
@@ -164,39 +156,76 @@ public class CategoryServiceImpl implements CategoryService {
     }
 
     /**
-     * Viewing the category tree for the given chat.
+     * Retrieving one page of the children of a category, used to browse the tree level by level.
+     *
+     * @param chatId chat identifier
+     * @param parentId category ID, null for the root categories
+     * @param offset number of children to skip
+     * @param limit maximum number of children
+     * @return page of children together with the category itself
+     */
+    @Override
+    public ChildrenPage findChildren(Long chatId, Long parentId, int offset, int limit) {
+        return categoryNavigationRepository.findChildren(chatId, parentId, offset, limit);
+    }
+
+    /**
+     * Streams the category tree for the given chat in message-sized chunks split on line boundaries.
+     * Chunks are handed to the sink while the tree is traversed. With a page number only that chunk
+     * is rendered, and the traversal stops as soon as it is complete.
      *
      * @param chatId chat identifier
-     * @return category tree as a string
+     * @param page 1-based number of the only chunk to send, 0 to send the whole tree
+     * @param maxChunkLength maximum length of one chunk
+     * @param sink receives the messages in order
      */
     @Override
-    public String viewCategoryTree(Long chatId) {
-        log.info("Attempting to view category tree for chatId: {}", chatId);
+    public void streamCategoryTree(Long chatId, int page, int maxChunkLength, Consumer<String> sink) {
+        log.info("Attempting to stream category tree page {} for chatId: {}", page, chatId);
 
-        List<Category> list = findByParentIsNullAndChatId(chatId);
-        if (list.isEmpty()) {
+        CategoryTreeSnapshot snapshot = categoryTreeCache.get(chatId);
+        if (snapshot.isEmpty()) {
             log.info("No categories found for chatId: {}", chatId);
-            return "There are no categories";
+            sink.accept("There are no categories");
+            return;
         }
-        StringBuilder tree = new StringBuilder();
-        for (Category category : list) {
-            buildTree(category, tree, 0);
+        ChunkedTreeWriter writer = new ChunkedTreeWriter(maxChunkLength, page, sink);
+        snapshot.depthFirst((node, depth) -> writer.line(snapshot.name(node), depth));
+        writer.finish();
+
+        if (page > 0) {
+            if (writer.hasMorePages()) {
+                sink.accept("Page %d. Send /viewTree page=%d for the next page.".formatted(page, page + 1));
+            } else if (!writer.hasWritten()) {
+                sink.accept("Page %d does not exist. The tree takes %d page(s).".formatted(page, writer.pageCount()));
+            }
         }
-        log.info("Category tree generated successfully for chatId: {}", chatId);
-        return tree.toString();
+        log.info("Category tree streamed successfully for chatId: {}", chatId);
     }
 
     /**
-     * Recursively builds the category tree.
+     * Streams the subtree of one category in message-sized chunks.
+     * Only the subtree down to the requested depth is read from the database.
      *
-     * @param category category to be recorded
-     * @param builder string builder for the tree
-     * @param level current level of nesting
+     * @param name category name
+     * @param chatId chat identifier
+     * @param maxDepth maximum depth below the category
+     * @param maxChunkLength maximum length of one chunk
+     * @param sink receives the messages in order
      */
-    private void buildTree(Category category, StringBuilder builder, int level) {
-        builder.append("    ".repeat(level)).append("-   ").append(category.getName()).append("\n");
-        for (Category child : category.getChildren()) {
-            buildTree(child, builder, level + 1); // Recursive call, part of the Composite Pattern
+    @Override
+    public void streamSubtree(String name, Long chatId, int maxDepth, int maxChunkLength, Consumer<String> sink) {
+        log.info("Attempting to stream subtree of category {} to depth {} for chatId: {}", name, maxDepth, chatId);
+
+        CategoryTreeSnapshot snapshot = categoryTreeLoader.loadSubtree(name, chatId, maxDepth);
+        if (snapshot.isEmpty()) {
+            log.warn("Category with name {} does not exist for chatId: {}", name, chatId);
+            sink.accept("Category with name " + name + " does not exist. Please enter an existing category.");
+            return;
         }
+        ChunkedTreeWriter writer = new ChunkedTreeWriter(maxChunkLength, 0, sink);
+        snapshot.depthFirst((node, depth) -> writer.line(snapshot.name(node), depth));
+        writer.finish();
+        log.info("Subtree of category {} with {} categories streamed for chatId: {}", name, snapshot.size(), chatId);
     }
 }
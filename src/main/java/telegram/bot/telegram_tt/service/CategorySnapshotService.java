@@ -0,0 +1,142 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import telegram.bot.telegram_tt.repository.CategoryClosureRepository;
+import telegram.bot.telegram_tt.repository.CategoryJdbcRepository;
+import telegram.bot.telegram_tt.repository.CategorySnapshotRepository;
+import telegram.bot.telegram_tt.repository.CategorySnapshotRepository.SnapshotInfo;
+import telegram.bot.telegram_tt.tree.CategoryTreeCodec;
+import telegram.bot.telegram_tt.tree.CategoryTreeCodec.DecodedTree;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Saves category trees as binary snapshots and restores them.
+ *
+ * A snapshot is encoded from the cached tree with the {@link CategoryTreeCodec}, so taking one costs no
+ * query but the insert. Only the newest snapshots of a chat are kept. A restore replaces the whole tree of
+ * the chat in one transaction: the categories are deleted, the snapshot is inserted with JDBC batches
+ * under newly reserved IDs and the closure table is rebuilt once.
+ */
+@Service
+@Slf4j
+public class CategorySnapshotService {
+
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final CategorySnapshotRepository categorySnapshotRepository;
+    private final CategoryJdbcRepository categoryJdbcRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
+    private final CategoryTreeVersionService categoryTreeVersionService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final int keep;
+    private final int batchSize;
+
+    public CategorySnapshotService(CategorySnapshotRepository categorySnapshotRepository,
+                                   CategoryJdbcRepository categoryJdbcRepository,
+                                   CategoryClosureRepository categoryClosureRepository,
+                                   CategoryTreeVersionService categoryTreeVersionService,
+                                   CategoryTreeCache categoryTreeCache,
+                                   @Value("${category.snapshot.keep:10}") int keep,
+                                   @Value("${category.ingest.batch-size:1000}") int batchSize) {
+        this.categorySnapshotRepository = categorySnapshotRepository;
+        this.categoryJdbcRepository = categoryJdbcRepository;
+        this.categoryClosureRepository = categoryClosureRepository;
+        this.categoryTreeVersionService = categoryTreeVersionService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.keep = Math.max(1, keep);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Saves the current tree of a chat and drops snapshots beyond the configured number.
+     *
+     * @param chatId chat ID
+     * @return a message with the ID of the new snapshot
+     */
+    @Transactional
+    public String create(Long chatId) {
+        long start = System.nanoTime();
+        CategoryTreeSnapshot tree = categoryTreeCache.get(chatId);
+        if (tree.size() == 0) {
+            return "There are no categories to save.";
+        }
+        byte[] data = CategoryTreeCodec.encode(tree);
+        long id = categorySnapshotRepository.insert(chatId, tree.size(), data);
+        int pruned = categorySnapshotRepository.deleteAllButNewest(chatId, keep);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Created snapshot {} for chatId {}: {} categories, {} bytes, {} old snapshots deleted, {} ms",
+                id, chatId, tree.size(), data.length, pruned, millis);
+        return "Snapshot #%d saved: %d categories, %s. Restore it with /restore %d.".formatted(
+                id, tree.size(), formatSize(data.length), id);
+    }
+
+    /**
+     * Replaces the tree of a chat with a snapshot.
+     * Categories get new IDs. Must not run while an import of the chat is not finished, see CategoryFacade.
+     *
+     * @param id     snapshot ID
+     * @param chatId chat ID
+     * @return a message indicating the result
+     */
+    @Transactional
+    public String restore(long id, Long chatId) {
+        long start = System.nanoTime();
+        Optional<byte[]> data = categorySnapshotRepository.findData(id, chatId);
+        if (data.isEmpty()) {
+            return "Snapshot #%d does not exist. Use /restore to list the saved snapshots.".formatted(id);
+        }
+        DecodedTree tree;
+        try {
+            tree = CategoryTreeCodec.decode(data.get());
+        } catch (IOException e) {
+            log.error("Failed to decode snapshot {} for chatId {}", id, chatId, e);
+            return "Snapshot #%d cannot be read.".formatted(id);
+        }
+        long decoded = System.nanoTime();
+
+        int deleted = categoryJdbcRepository.deleteByChatId(chatId);
+        List<Long> ids = categoryJdbcRepository.allocateIds(tree.size());
+        categoryJdbcRepository.insertTree(chatId, ids, tree.names(), tree.parents(), batchSize);
+        long inserted = System.nanoTime();
+        categoryClosureRepository.rebuild(chatId);
+        categoryTreeVersionService.bump(chatId);
+        categoryTreeCache.invalidate(chatId);
+
+        long end = System.nanoTime();
+        log.info("Restored snapshot {} for chatId {}: {} categories replaced by {}, decode {} ms, insert {} ms, closure {} ms",
+                id, chatId, deleted, tree.size(), (decoded - start) / 1_000_000, (inserted - decoded) / 1_000_000,
+                (end - inserted) / 1_000_000);
+        return "Snapshot #%d restored: %d categories.".formatted(id, tree.size());
+    }
+
+    /**
+     * Lists the saved snapshots of a chat.
+     *
+     * @param chatId chat ID
+     * @return a message with one line per snapshot, newest first
+     */
+    public String list(Long chatId) {
+        List<SnapshotInfo> snapshots = categorySnapshotRepository.findByChatId(chatId);
+        if (snapshots.isEmpty()) {
+            return "There are no snapshots. Save one with /snapshot.";
+        }
+        StringBuilder response = new StringBuilder("Snapshots, restore one with /restore <id>:");
+        for (SnapshotInfo snapshot : snapshots) {
+            response.append("\n#%d  %s  %d categories, %s".formatted(snapshot.id(),
+                    snapshot.createdAt().format(CREATED_AT_FORMAT), snapshot.nodeCount(), formatSize(snapshot.size())));
+        }
+        return response.toString();
+    }
+
+    private static String formatSize(int bytes) {
+        return bytes < 1024 ? bytes + " B" : "%.1f KB".formatted(bytes / 1024.0);
+    }
+}
@@ -0,0 +1,103 @@
+package telegram.bot.telegram_tt.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the category trees of recently active chats.
+ *
+ * Every cached tree remembers the tree version it was loaded at and is reloaded when the version of the chat
+ * has changed, so a tree is never served after a committed write. Writers also invalidate the entry to free it early.
+ * The cache is bounded by the total number of cached categories and by idle time, and evicts with W-TinyLFU.
+ */
+@Component
+@Slf4j
+public class CategoryTreeCache {
+
+    private final CategoryTreeLoader categoryTreeLoader;
+    private final CategoryTreeVersionService categoryTreeVersionService;
+    private final boolean enabled;
+    private final Cache<Long, VersionedTree> trees;
+
+    /**
+     * Number of cached trees found out of date and reloaded. Caffeine counts them as hits.
+     */
+    private final AtomicLong staleReloads = new AtomicLong();
+
+    public CategoryTreeCache(CategoryTreeLoader categoryTreeLoader,
+                             CategoryTreeVersionService categoryTreeVersionService,
+                             @Value("${category.cache.enabled:true}") boolean enabled,
+                             @Value("${category.cache.max-categories:1000000}") long maxCategories,
+                             @Value("${category.cache.expire-after-access-ms:1800000}") long expireAfterAccessMs) {
+        this.categoryTreeLoader = categoryTreeLoader;
+        this.categoryTreeVersionService = categoryTreeVersionService;
+        this.enabled = enabled;
+        this.trees = Caffeine.newBuilder()
+                .maximumWeight(maxCategories)
+                .weigher((Long chatId, VersionedTree tree) -> Math.max(1, tree.tree().size()))
+                .expireAfterAccess(Duration.ofMillis(expireAfterAccessMs))
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the category tree of a chat, loading it if it is not cached or out of date.
+     * With the cache disabled the tree is always loaded from the database.
+     *
+     * @param chatId chat identifier
+     * @return category tree
+     */
+    public CategoryTreeSnapshot get(Long chatId) {
+        if (!enabled) {
+            return categoryTreeLoader.loadTree(chatId);
+        }
+        // The version is read before the tree, so a tree loaded during a concurrent write is at least that new
+        long version = categoryTreeVersionService.currentVersion(chatId);
+        VersionedTree cached = trees.get(chatId, id -> new VersionedTree(version, categoryTreeLoader.loadTree(id)));
+        if (cached.version() != version) {
+            staleReloads.incrementAndGet();
+            cached = new VersionedTree(version, categoryTreeLoader.loadTree(chatId));
+            trees.put(chatId, cached);
+        }
+        return cached.tree();
+    }
+
+    /**
+     * Drops the cached tree of a chat. Called after the tree was changed.
+     *
+     * @param chatId chat identifier
+     */
+    public void invalidate(Long chatId) {
+        trees.invalidate(chatId);
+    }
+
+    /**
+     * Periodically logs cache hits, misses and evictions.
+     */
+    @Scheduled(fixedDelayString = "${metrics.log-interval-ms:60000}")
+    public void logMetrics() {
+        CacheStats stats = trees.stats();
+        if (!enabled || stats.requestCount() == 0) {
+            return;
+        }
+        log.info("Category tree cache: hits={}, misses={}, staleReloads={}, evictions={}, chats={}, avgLoadMs={}",
+                stats.hitCount(), stats.missCount(), staleReloads.get(), stats.evictionCount(),
+                trees.estimatedSize(), (long) (stats.averageLoadPenalty() / 1_000_000));
+    }
+
+    private record VersionedTree(long version, CategoryTreeSnapshot tree) {
+    }
+}
@@ -0,0 +1,52 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import telegram.bot.telegram_tt.repository.CategoryRepository;
+import telegram.bot.telegram_tt.repository.CategoryTreeRow;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.util.List;
+
+/**
+ * Service for loading the category tree of a chat with a single query.
+ */
+@Service
+@RequiredArgsConstructor
+public class CategoryTreeLoader {
+
+    private final CategoryRepository categoryRepository;
+
+    /**
+     * Loads the category tree of a chat.
+     * The rows arrive in depth-first order, so every category is attached to the last category
+     * one level above it.
+     *
+     * @param chatId chat identifier
+     * @return snapshot of the category tree of the chat
+     */
+    public CategoryTreeSnapshot loadTree(Long chatId) {
+        return toSnapshot(categoryRepository.findTreeRowsByChatId(chatId));
+    }
+
+    /**
+     * Loads the subtree of one category down to a maximum depth.
+     * The category becomes the only root category of the snapshot.
+     *
+     * @param name     category name
+     * @param chatId   chat identifier
+     * @param maxDepth maximum depth below the category
+     * @return snapshot of the subtree, empty if the category does not exist
+     */
+    public CategoryTreeSnapshot loadSubtree(String name, Long chatId, int maxDepth) {
+        return toSnapshot(categoryRepository.findSubtreeRows(name, chatId, maxDepth));
+    }
+
+    private CategoryTreeSnapshot toSnapshot(List<CategoryTreeRow> rows) {
+        CategoryTreeSnapshot.Builder builder = new CategoryTreeSnapshot.Builder(rows.size());
+        for (CategoryTreeRow row : rows) {
+            builder.add(row.getId(), row.getName(), row.getDepth());
+        }
+        return builder.build();
+    }
+}
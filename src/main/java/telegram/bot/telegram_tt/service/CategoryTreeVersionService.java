@@ -0,0 +1,60 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import telegram.bot.telegram_tt.repository.CategoryTreeVersionRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service for tracking the version of each chat's category tree.
+ * Every write to a category tree bumps the version, so anything derived from a tree
+ * can be cached under (chat, version) and reused until the tree changes.
+ */
+@Service
+@RequiredArgsConstructor
+public class CategoryTreeVersionService {
+
+    private final CategoryTreeVersionRepository categoryTreeVersionRepository;
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the current tree version of a chat. Known versions are answered from memory.
+     *
+     * @param chatId chat identifier
+     * @return current version
+     */
+    public long currentVersion(Long chatId) {
+        return versions.computeIfAbsent(chatId, categoryTreeVersionRepository::findVersion);
+    }
+
+    /**
+     * Bumps the tree version of a chat. Must be called in the transaction that changes the tree;
+     * the new version becomes visible in memory only after that transaction commits.
+     *
+     * @param chatId chat identifier
+     * @return new version
+     */
+    public long bump(Long chatId) {
+        long version = categoryTreeVersionRepository.incrementVersion(chatId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            versions.put(chatId, version);
+            return version;
+        }
+        versions.remove(chatId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    versions.put(chatId, version);
+                } else {
+                    versions.remove(chatId);
+                }
+            }
+        });
+        return version;
+    }
+}
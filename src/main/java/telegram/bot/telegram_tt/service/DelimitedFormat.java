@@ -0,0 +1,72 @@
+package telegram.bot.telegram_tt.service;
+
+import java.util.Optional;
+
+/**
+ * Plain text formats of a category file: one (category, parent category) row per line.
+ */
+public enum DelimitedFormat {
+
+    /**
+     * Comma-separated values; fields containing a comma, a quote or a line break are quoted as in RFC 4180.
+     */
+    CSV("csv", ',', true),
+
+    /**
+     * Tab-separated values; fields are never quoted, tabs and line breaks in names are written as spaces.
+     */
+    TSV("tsv", '\t', false);
+
+    private final String extension;
+    private final char separator;
+    private final boolean quoted;
+
+    DelimitedFormat(String extension, char separator, boolean quoted) {
+        this.extension = extension;
+        this.separator = separator;
+        this.quoted = quoted;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    /**
+     * Finds the format of a file by its extension.
+     *
+     * @param fileName file name or path
+     * @return the format, empty if the file is not a delimited text file
+     */
+    public static Optional<DelimitedFormat> fromFileName(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        for (DelimitedFormat format : values()) {
+            if (lowerCase.endsWith("." + format.extension)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds a format by its name as typed by the user, e.g. "csv".
+     *
+     * @param name format name
+     * @return the format, empty if there is none with this name
+     */
+    public static Optional<DelimitedFormat> fromName(String name) {
+        for (DelimitedFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
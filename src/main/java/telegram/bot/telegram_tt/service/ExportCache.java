@@ -0,0 +1,95 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of exported category trees.
+ * Stores the Telegram file_id of a sent export under (chat, tree version, format),
+ * so an unchanged tree can be sent again by reference without building the file.
+ * The least recently used entries are evicted when the cache is full.
+ */
+@Component
+@Slf4j
+public class ExportCache {
+
+    private final Map<Key, String> fileIds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ExportCache(@Value("${category.export.cache-size:1000}") int maxSize) {
+        this.fileIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up the file_id of an export.
+     *
+     * @param chatId  chat identifier
+     * @param version tree version
+     * @param format  export format, e.g. "xlsx"
+     * @return file_id, or null if the export is not cached
+     */
+    public synchronized String get(Long chatId, long version, String format) {
+        String fileId = fileIds.get(new Key(chatId, version, format));
+        (fileId != null ? hits : misses).incrementAndGet();
+        return fileId;
+    }
+
+    /**
+     * Stores the file_id of a sent export.
+     *
+     * @param chatId  chat identifier
+     * @param version tree version the export was built from
+     * @param format  export format
+     * @param fileId  file_id returned by Telegram
+     */
+    public synchronized void put(Long chatId, long version, String format, String fileId) {
+        fileIds.put(new Key(chatId, version, format), fileId);
+    }
+
+    /**
+     * Removes an export, e.g. when Telegram rejects its file_id.
+     *
+     * @param chatId  chat identifier
+     * @param version tree version
+     * @param format  export format
+     */
+    public synchronized void remove(Long chatId, long version, String format) {
+        fileIds.remove(new Key(chatId, version, format));
+    }
+
+    /**
+     * Periodically logs cache hits, misses and evictions.
+     */
+    @Scheduled(fixedDelayString = "${metrics.log-interval-ms:60000}")
+    public void logMetrics() {
+        if (hits.get() + misses.get() == 0) {
+            return;
+        }
+        int size;
+        synchronized (this) {
+            size = fileIds.size();
+        }
+        log.info("Export cache: hits={}, misses={}, evictions={}, size={}", hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    private record Key(Long chatId, long version, String format) {
+    }
+}
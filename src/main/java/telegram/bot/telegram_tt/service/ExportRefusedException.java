@@ -0,0 +1,12 @@
+package telegram.bot.telegram_tt.service;
+
+/**
+ * Thrown when an export is refused before the file is written, e.g. because the tree does not fit into one sheet.
+ * The message is meant for the user.
+ */
+public class ExportRefusedException extends RuntimeException {
+
+    public ExportRefusedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,526 @@
+package telegram.bot.telegram_tt.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import telegram.bot.telegram_tt.entity.ImportJobStatus;
+import telegram.bot.telegram_tt.repository.CategoryClosureRepository;
+import telegram.bot.telegram_tt.repository.ImportJobRepository;
+import telegram.bot.telegram_tt.repository.ImportJobRepository.ImportJob;
+import telegram.bot.telegram_tt.repository.UploadDigestRepository;
+import telegram.bot.telegram_tt.service.ImportPlan.Move;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs uploads as background import jobs.
+ *
+ * An uploaded file is moved to a staging directory and a job row is created, then the job is queued on a
+ * dedicated executor. Jobs of one chat run one after another in submission order; jobs of different chats
+ * run in parallel. A job parses the file, plans the changes against the current tree with the
+ * {@link ImportPlanner} and writes only those changes in chunks, each chunk in its own transaction together
+ * with the closure rows of the categories it touched, the tree version bump and the job progress. Deletes,
+ * if asked for, are committed last together with the end of the job. The user sees one status message that
+ * is edited with the changes done, the rate and the estimated time left; the final text also gives the
+ * number of SQL statements and round trips the job took.
+ *
+ * The job plans against the tree as it was when the file was read, so the tree of a chat must not be edited
+ * in between. While a job of a chat is queued or running, {@link #isImporting} is true and edits of that
+ * chat are refused, see CategoryFacade.
+ *
+ * Categories created by a job are tagged with the job ID and moved categories remember their old parents,
+ * so a failed job is rolled back completely. After a restart, unfinished jobs are planned again against the
+ * tree their committed chunks left behind and go on from there, or are rolled back if their file is gone.
+ *
+ * A finished job remembers the SHA-256 of its file with the tree version it left behind. The same file sent
+ * again before the tree changes is answered from that record without being opened.
+ */
+@Service
+@Slf4j
+public class ImportJobService {
+
+    private final ImportJobRepository importJobRepository;
+    private final UploadDigestRepository uploadDigestRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
+    private final CategoryIngestService categoryIngestService;
+    private final CategoryFileReader categoryFileReader;
+    private final ImportPlanner importPlanner;
+    private final CategoryTreeVersionService categoryTreeVersionService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final ImportStatusNotifier importStatusNotifier;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final long progressIntervalMillis;
+    private final Path stagingDir;
+    private final ThreadPoolExecutor workers;
+    private final Map<Long, CompletableFuture<Void>> chatTails = new ConcurrentHashMap<>();
+    private volatile boolean stopping;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    /**
+     * @param workers              number of jobs running at the same time
+     * @param chunkSize            number of rows committed per transaction
+     * @param progressIntervalMillis minimum time between two edits of the status message
+     * @param stagingDir           directory keeping the files of unfinished jobs, empty for a temporary directory
+     */
+    public ImportJobService(ImportJobRepository importJobRepository,
+                            UploadDigestRepository uploadDigestRepository,
+                            CategoryClosureRepository categoryClosureRepository,
+                            CategoryIngestService categoryIngestService,
+                            CategoryFileReader categoryFileReader,
+                            ImportPlanner importPlanner,
+                            CategoryTreeVersionService categoryTreeVersionService,
+                            CategoryTreeCache categoryTreeCache,
+                            ImportStatusNotifier importStatusNotifier,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${category.import.workers:2}") int workers,
+                            @Value("${category.import.chunk-size:5000}") int chunkSize,
+                            @Value("${category.import.progress-interval-ms:2000}") long progressIntervalMillis,
+                            @Value("${category.import.staging-dir:}") String stagingDir) {
+        this.importJobRepository = importJobRepository;
+        this.uploadDigestRepository = uploadDigestRepository;
+        this.categoryClosureRepository = categoryClosureRepository;
+        this.categoryIngestService = categoryIngestService;
+        this.categoryFileReader = categoryFileReader;
+        this.importPlanner = importPlanner;
+        this.categoryTreeVersionService = categoryTreeVersionService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.importStatusNotifier = importStatusNotifier;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.stagingDir = stagingDir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "category-imports")
+                : Paths.get(stagingDir);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "category-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the import of an uploaded file and sends the status message.
+     * The file is moved to the staging directory, so the caller may delete its own copy afterwards.
+     *
+     * @param file          uploaded file
+     * @param sha256        SHA-256 of the file, remembered once the import is done
+     * @param chatId        chat ID
+     * @param deleteMissing whether categories missing from the file are deleted
+     * @return job ID
+     * @throws IOException if the file cannot be moved to the staging directory
+     */
+    public long submit(Path file, String sha256, Long chatId, boolean deleteMissing) throws IOException {
+        Files.createDirectories(stagingDir);
+        String fileName = file.getFileName().toString();
+        String suffix = fileName.contains(".") ? fileName.substring(fileName.lastIndexOf('.')) : "";
+        Path staged = Files.createTempFile(stagingDir, "job-", suffix);
+        Files.move(file, staged, StandardCopyOption.REPLACE_EXISTING);
+
+        long jobId;
+        try {
+            jobId = importJobRepository.create(chatId, staged.toString(), sha256, deleteMissing);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+        submitted.incrementAndGet();
+        log.info("Queued import job {} for chatId {}", jobId, chatId);
+
+        CompletableFuture<Integer> statusMessage = importStatusNotifier.send(chatId,
+                "Import #%d queued.".formatted(jobId));
+        statusMessage.thenAccept(messageId -> importJobRepository.setStatusMessage(jobId, messageId));
+        enqueue(chatId, jobId, statusMessage);
+        return jobId;
+    }
+
+    /**
+     * Resumes or rolls back the jobs that were unfinished when the application stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        for (ImportJob job : importJobRepository.findUnfinished()) {
+            if (job.filePath() != null && Files.exists(Path.of(job.filePath()))) {
+                log.info("Resuming import job {} for chatId {} after {} changes", job.id(), job.chatId(), job.rowsDone());
+                CompletableFuture<Integer> statusMessage = job.statusMessageId() != null
+                        ? CompletableFuture.completedFuture(job.statusMessageId())
+                        : importStatusNotifier.send(job.chatId(), "Import #%d resumed.".formatted(job.id()));
+                enqueue(job.chatId(), job.id(), statusMessage);
+            } else {
+                log.warn("File of import job {} is gone, rolling the job back", job.id());
+                int deleted = rollBack(job, ImportJobStatus.ROLLED_BACK, "Uploaded file is no longer available.");
+                notify(job.chatId(), job.statusMessageId(), deleted >= 0
+                        ? "Import #%d was interrupted and has been rolled back (%d categories removed). Please upload the file again."
+                                .formatted(job.id(), deleted)
+                        : "Import #%d was interrupted and could not be rolled back.".formatted(job.id()));
+            }
+        }
+    }
+
+    /**
+     * Appends a job to the queue of its chat.
+     */
+    private void enqueue(Long chatId, long jobId, CompletableFuture<Integer> statusMessage) {
+        CompletableFuture<Void> next = chatTails.compute(chatId, (id, tail) -> {
+            CompletableFuture<Void> previous = tail != null ? tail : CompletableFuture.completedFuture(null);
+            return previous
+                    .handle((result, e) -> null)
+                    .thenRunAsync(() -> run(jobId, statusMessage), workers);
+        });
+        // Registered outside compute: a job that is already done runs the callback at once, and the map
+        // must not be changed from inside its own compute
+        next.whenComplete((result, e) -> chatTails.remove(chatId, next));
+    }
+
+    /**
+     * Checks whether a chat has an import job queued or running. The tree of such a chat must not be edited,
+     * because the job plans and writes against the tree as it was when the job read its file.
+     * Jobs are queued from the update handler of their chat, so a handler that sees false here cannot be
+     * overtaken by a job of the same chat.
+     *
+     * @param chatId chat ID
+     * @return true if an import of the chat is not finished
+     */
+    public boolean isImporting(Long chatId) {
+        return chatTails.containsKey(chatId);
+    }
+
+    /**
+     * Checks whether a file was the last one imported into a chat and the tree has not changed since.
+     * Only the hash and the tree version are compared, the file itself is not read.
+     *
+     * @param chatId        chat ID
+     * @param sha256        SHA-256 of the file
+     * @param deleteMissing whether the upload deletes categories missing from the file
+     * @return true if importing the file again would change nothing
+     */
+    public boolean isAlreadyImported(Long chatId, String sha256, boolean deleteMissing) {
+        return uploadDigestRepository.findTreeVersion(chatId, sha256, deleteMissing)
+                .map(version -> version == categoryTreeVersionService.currentVersion(chatId))
+                .orElse(false);
+    }
+
+    /**
+     * Parses an uploaded file and plans its import without writing anything.
+     *
+     * @param file          uploaded file
+     * @param chatId        chat ID
+     * @param deleteMissing whether categories missing from the file would be deleted
+     * @return description of the planned changes
+     * @throws IOException if the file cannot be read
+     */
+    public String preview(Path file, Long chatId, boolean deleteMissing) throws IOException {
+        CategoryRows rows = new CategoryRows();
+        categoryFileReader.read(file, rows);
+        try {
+            ImportPlan plan = importPlanner.plan(rows.getRows(), categoryTreeCache.get(chatId), deleteMissing);
+            return "Preview, nothing has been changed. " + describe(plan, rows);
+        } catch (ImportRefusedException e) {
+            return "Preview: this upload would be refused. " + e.getMessage() + appendSkipped(rows);
+        }
+    }
+
+    /**
+     * Runs one job to the end. Never throws; a failure rolls the job back.
+     */
+    private void run(long jobId, CompletableFuture<Integer> statusMessage) {
+        ImportJob job = importJobRepository.findById(jobId).orElse(null);
+        if (job == null || job.status().isFinished() || stopping) {
+            return;
+        }
+        Progress progress = new Progress(job, statusMessage);
+        try {
+            // Parse the whole file first, so the plan and the total are known for the progress and the ETA
+            progress.report("Import #%d: reading file…".formatted(jobId));
+            CategoryRows rows = new CategoryRows(chunkSize, parsed ->
+                    progress.maybeReport("Import #%d: reading file… %d rows parsed.".formatted(jobId, parsed)));
+            categoryFileReader.read(Path.of(job.filePath()), rows);
+
+            // A resumed job plans against the tree its committed chunks left behind, so only the rest remains
+            CategoryTreeSnapshot tree = categoryTreeCache.get(job.chatId());
+            ImportPlan plan;
+            try {
+                plan = importPlanner.plan(rows.getRows(), tree, job.deleteMissing());
+            } catch (ImportRefusedException e) {
+                log.warn("Import job {} for chatId {} refused: {}", jobId, job.chatId(), e.getMessage());
+                failed.incrementAndGet();
+                if (job.rowsDone() > 0) {
+                    rollBack(job, ImportJobStatus.FAILED, e.getMessage());
+                } else {
+                    importJobRepository.markFinished(jobId, ImportJobStatus.FAILED, truncate(e.getMessage()));
+                }
+                deleteFile(job);
+                progress.finish("Import #%d refused, nothing has been changed. %s%s"
+                        .formatted(jobId, e.getMessage(), appendSkipped(rows)));
+                return;
+            }
+            log.info("Import job {} for chatId {}: {}", jobId, job.chatId(), describe(plan, rows));
+            importJobRepository.markRunning(jobId, job.rowsDone() + plan.changes());
+            progress.start(job.rowsDone() + plan.changes());
+
+            // New categories are created first, so every move finds its parent in the tree or in createdIds
+            Map<String, Long> createdIds = new HashMap<>();
+            List<String> inserts = plan.inserts();
+            List<Move> moves = plan.moves();
+            for (int from = 0; from < inserts.size() + moves.size(); from += chunkSize) {
+                if (stopping) {
+                    log.info("Import job {} paused at {} changes for shutdown", jobId, progress.rowsDone);
+                    return;
+                }
+                int to = Math.min(from + chunkSize, inserts.size() + moves.size());
+                List<String> insertChunk = inserts.subList(Math.min(from, inserts.size()), Math.min(to, inserts.size()));
+                List<Move> moveChunk = moves.subList(Math.max(from - inserts.size(), 0), Math.max(to - inserts.size(), 0));
+                writeChunk(job, insertChunk, moveChunk, tree, createdIds, progress);
+            }
+
+            // Deletes and the end of the job commit together, so a job is never rolled back after deleting
+            int deleted = transactionTemplate.execute(tx -> {
+                // Closure rows of deleted categories go with them; their kept children were re-rooted by the chunks
+                int count = categoryIngestService.applyDeletes(plan.deletes());
+                if (count > 0) {
+                    categoryTreeVersionService.bump(job.chatId());
+                }
+                importJobRepository.deleteUndo(jobId);
+                importJobRepository.updateProgress(jobId, progress.rowsDone + plan.deletes().size(),
+                        progress.inserted, progress.linked);
+                importJobRepository.markFinished(jobId, ImportJobStatus.DONE, null);
+                if (job.sha256() != null) {
+                    uploadDigestRepository.save(job.chatId(), job.sha256(), job.deleteMissing());
+                }
+                return count;
+            });
+            categoryTreeCache.invalidate(job.chatId());
+            if (!plan.deletes().isEmpty()) {
+                // The deletes are one statement
+                progress.statements++;
+                progress.roundTrips++;
+            }
+            deleteFile(job);
+            completed.incrementAndGet();
+            log.info("Import job {} for chatId {} done: {} inserted, {} linked, {} deleted with {} statements in {} round trips, {} ms",
+                    jobId, job.chatId(), progress.inserted, progress.linked, deleted, progress.statements,
+                    progress.roundTrips, progress.elapsedMillis());
+            progress.finish("Import #%d done in %s. %s Written with %d SQL statements in %d round trips."
+                    .formatted(jobId, formatDuration(progress.elapsedMillis()), describe(plan, rows),
+                            progress.statements, progress.roundTrips));
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Import job {} for chatId {} failed", jobId, job.chatId(), e);
+            int deleted = rollBack(job, ImportJobStatus.FAILED, e.getMessage());
+            deleteFile(job);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            progress.finish(deleted >= 0
+                    ? "Import #%d failed and has been rolled back (%d categories removed). Error: %s"
+                            .formatted(jobId, deleted, error)
+                    : "Import #%d failed and could not be rolled back. Error: %s".formatted(jobId, error));
+        }
+    }
+
+    /**
+     * Commits one chunk together with its closure rows, the tree version and the job progress,
+     * so every committed state of the tree is complete and the job knows where to resume.
+     */
+    private void writeChunk(ImportJob job, List<String> inserts, List<Move> moves, CategoryTreeSnapshot tree,
+                            Map<String, Long> createdIds, Progress progress) {
+        // A failed chunk fails the whole job, so the IDs it added to the map are never used again
+        CategoryIngestService.ChunkResult result = transactionTemplate.execute(status -> {
+            CategoryIngestService.ChunkResult written = categoryIngestService.applyChunk(inserts, moves, tree,
+                    createdIds, job.chatId(), job.id());
+            categoryTreeVersionService.bump(job.chatId());
+            importJobRepository.updateProgress(job.id(), progress.rowsDone + inserts.size() + moves.size(),
+                    progress.inserted + written.inserted(), progress.linked + written.linked());
+            return written;
+        });
+        categoryTreeCache.invalidate(job.chatId());
+        rowsWritten.addAndGet(inserts.size() + moves.size());
+        progress.chunkDone(inserts.size() + moves.size(), result);
+    }
+
+    private static String describe(ImportPlan plan, CategoryRows rows) {
+        String text = "%d rows: %d unchanged, %d new categories, %d moved, %d linked, %d deleted."
+                .formatted(plan.rows(), plan.unchanged(), plan.inserts().size(), plan.reparented(),
+                        plan.moves().size() - plan.reparented(), plan.deletes().size());
+        if (plan.skippedCycles() > 0) {
+            text += " %d rows skipped because the parent lies below the category.".formatted(plan.skippedCycles());
+        }
+        return text + appendSkipped(rows);
+    }
+
+    private static String appendSkipped(CategoryRows rows) {
+        return rows.getSkipped() > 0 ? " " + rows.describeSkipped() : "";
+    }
+
+    /**
+     * Undoes the committed chunks of a job and marks it finished with the given status.
+     * If the rollback itself fails, the job is still marked FAILED, so it is not resumed on the next start.
+     *
+     * @return number of deleted categories, -1 if the rollback itself failed
+     */
+    private int rollBack(ImportJob job, ImportJobStatus status, String error) {
+        try {
+            Integer deleted = transactionTemplate.execute(tx -> {
+                int count = importJobRepository.rollback(job.id());
+                categoryClosureRepository.rebuild(job.chatId());
+                categoryTreeVersionService.bump(job.chatId());
+                importJobRepository.markFinished(job.id(), status, truncate(error));
+                return count;
+            });
+            categoryTreeCache.invalidate(job.chatId());
+            return deleted != null ? deleted : 0;
+        } catch (RuntimeException e) {
+            log.error("Could not roll back import job {}", job.id(), e);
+            try {
+                importJobRepository.markFinished(job.id(), ImportJobStatus.FAILED,
+                        truncate("Rollback failed: " + e.getMessage() + ". " + error));
+            } catch (RuntimeException markError) {
+                log.error("Could not mark import job {} as failed", job.id(), markError);
+            }
+            return -1;
+        }
+    }
+
+    private void deleteFile(ImportJob job) {
+        try {
+            Files.deleteIfExists(Path.of(job.filePath()));
+        } catch (IOException e) {
+            log.warn("Could not delete file of import job {}", job.id(), e);
+        }
+    }
+
+    private void notify(Long chatId, Integer messageId, String text) {
+        if (messageId != null) {
+            importStatusNotifier.edit(chatId, messageId, text);
+        } else {
+            importStatusNotifier.send(chatId, text);
+        }
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > 1024 ? error.substring(0, 1024) : error;
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = Math.max(0, millis / 1000);
+        return seconds < 60 ? seconds + " s" : "%d min %02d s".formatted(seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Periodically logs how many jobs were run and how many rows they wrote.
+     */
+    @Scheduled(fixedDelayString = "${metrics.log-interval-ms:60000}")
+    public void logMetrics() {
+        if (submitted.get() == 0) {
+            return;
+        }
+        log.info("Import jobs: submitted={}, completed={}, failed={}, rowsWritten={}, running={}, queued={}",
+                submitted.get(), completed.get(), failed.get(), rowsWritten.get(), workers.getActiveCount(),
+                workers.getQueue().size());
+    }
+
+    /**
+     * Lets running jobs finish their current chunk and stop. They are resumed on the next start.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Progress of a running job and the throttled edits of its status message.
+     */
+    private final class Progress {
+        private final ImportJob job;
+        private final CompletableFuture<Integer> statusMessage;
+        private final long startNanos = System.nanoTime();
+        private final int rowsAtStart;
+        private long lastReportNanos;
+        private int rowsTotal;
+        private int rowsDone;
+        private int inserted;
+        private int linked;
+        // Counted for this run only, a resumed job does not know those of its earlier chunks
+        private int statements;
+        private int roundTrips;
+
+        private Progress(ImportJob job, CompletableFuture<Integer> statusMessage) {
+            this.job = job;
+            this.statusMessage = statusMessage;
+            this.rowsAtStart = job.rowsDone();
+            this.rowsDone = job.rowsDone();
+            this.inserted = job.inserted();
+            this.linked = job.linked();
+        }
+
+        private void start(int rowsTotal) {
+            this.rowsTotal = rowsTotal;
+            report(text());
+        }
+
+        private void chunkDone(int rows, CategoryIngestService.ChunkResult result) {
+            this.rowsDone += rows;
+            this.inserted += result.inserted();
+            this.linked += result.linked();
+            this.statements += result.statements();
+            this.roundTrips += result.roundTrips();
+            maybeReport(text());
+        }
+
+        private String text() {
+            long millis = elapsedMillis();
+            double rate = millis > 0 ? (rowsDone - rowsAtStart) * 1000.0 / millis : 0;
+            String eta = rate > 0 ? formatDuration((long) ((rowsTotal - rowsDone) / rate * 1000)) : "unknown";
+            return "Import #%d: %d of %d changes (%d%%), %d new categories, %d links. %.0f changes/s, about %s left."
+                    .formatted(job.id(), rowsDone, rowsTotal, rowsTotal > 0 ? rowsDone * 100L / rowsTotal : 100,
+                            inserted, linked, rate, eta);
+        }
+
+        private long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        private void maybeReport(String text) {
+            if (System.nanoTime() - lastReportNanos >= progressIntervalMillis * 1_000_000) {
+                report(text);
+            }
+        }
+
+        private void report(String text) {
+            lastReportNanos = System.nanoTime();
+            statusMessage.thenAccept(messageId -> importStatusNotifier.edit(job.chatId(), messageId, text));
+        }
+
+        private void finish(String text) {
+            statusMessage.whenComplete((messageId, e) -> ImportJobService.this.notify(job.chatId(), messageId, text));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package telegram.bot.telegram_tt.service;
+
+import java.util.List;
+
+/**
+ * Changes needed to bring the category tree of a chat in line with an uploaded file.
+ *
+ * @param rows          number of rows in the file
+ * @param unchanged     number of rows whose category already exists under the same parent
+ * @param inserts       names of the categories to create, without a parent
+ * @param moves         parents to set, for created categories and for existing categories that move
+ * @param deletes       IDs of existing categories missing from the file, empty unless deletes were asked for
+ * @param skippedCycles number of rows ignored because the new parent lies below the category
+ */
+public record ImportPlan(int rows, int unchanged, List<String> inserts, List<Move> moves, List<Long> deletes,
+                         int skippedCycles) {
+
+    /**
+     * Returns the number of single changes in the plan.
+     */
+    public int changes() {
+        return inserts.size() + moves.size() + deletes.size();
+    }
+
+    public boolean isEmpty() {
+        return changes() == 0;
+    }
+
+    /**
+     * Returns the number of existing categories that get a new parent.
+     */
+    public int reparented() {
+        return (int) moves.stream().filter(Move::existing).count();
+    }
+
+    /**
+     * New parent of a category.
+     *
+     * @param category category name
+     * @param parent   parent name, null to make the category a root category
+     * @param existing whether the category exists already, i.e. the move has to be undone on rollback
+     */
+    public record Move(String category, String parent, boolean existing) {
+    }
+}
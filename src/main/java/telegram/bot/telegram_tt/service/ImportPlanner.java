@@ -0,0 +1,141 @@
+package telegram.bot.telegram_tt.service;
+
+import org.springframework.stereotype.Component;
+import telegram.bot.telegram_tt.service.ImportPlan.Move;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compares an uploaded file with the current category tree of a chat and plans the smallest set of changes.
+ *
+ * The file is read as the wanted state: every row names a category and its parent ("-" for a root category).
+ * Rows that match the tree are skipped, so re-uploading a slightly changed file only writes the changed rows.
+ * All lookups go through the hash maps of the tree snapshot and of the plan; the database is not queried.
+ * A plan that deletes missing categories is refused if it would delete every category of the tree,
+ * which is what an empty or unreadable file would otherwise do.
+ */
+@Component
+public class ImportPlanner {
+
+    private static final String NO_PARENT = "-";
+
+    /**
+     * Plans the changes for an uploaded file.
+     *
+     * @param rows          map from category name to parent name, "-" for root categories
+     * @param tree          current tree of the chat
+     * @param deleteMissing whether categories that the file does not mention are deleted
+     * @return planned changes
+     * @throws ImportRefusedException if categories are to be deleted and none of the tree would be kept
+     */
+    public ImportPlan plan(Map<String, String> rows, CategoryTreeSnapshot tree, boolean deleteMissing) {
+        Set<String> inserts = new LinkedHashSet<>();
+        List<Move> moves = new ArrayList<>();
+        // Parents that will have changed once the plan is applied, null for root categories
+        Map<String, String> newParents = new HashMap<>();
+        Set<String> newAncestors = new HashSet<>();
+        int unchanged = 0;
+        int skippedCycles = 0;
+
+        for (Map.Entry<String, String> row : rows.entrySet()) {
+            String category = row.getKey();
+            String parent = NO_PARENT.equals(row.getValue()) ? null : row.getValue();
+            boolean exists = tree.contains(category);
+            if (!exists) {
+                inserts.add(category);
+            }
+            if (parent != null && !tree.contains(parent)) {
+                // Parents missing from the tree are created as root categories
+                inserts.add(parent);
+            }
+            if (exists && Objects.equals(parentOf(category, tree, newParents), parent)) {
+                unchanged++;
+                continue;
+            }
+            if (!exists && parent == null) {
+                continue;
+            }
+            // Only a category with children can end up above its new parent; leaves skip the walk up the tree
+            boolean hasChildren = newAncestors.contains(category)
+                    || (exists && tree.firstChild(tree.indexOf(category)) != CategoryTreeSnapshot.NONE);
+            if (parent != null && (parent.equals(category)
+                    || hasChildren && isBelow(parent, category, tree, newParents))) {
+                skippedCycles++;
+                continue;
+            }
+            moves.add(new Move(category, parent, exists));
+            newParents.put(category, parent);
+            if (parent != null) {
+                newAncestors.add(parent);
+            }
+        }
+
+        List<Long> deletes = new ArrayList<>();
+        if (deleteMissing) {
+            Set<String> mentioned = new HashSet<>(rows.keySet());
+            for (String parent : rows.values()) {
+                mentioned.add(parent);
+            }
+            boolean[] deleted = new boolean[tree.size()];
+            for (int node = 0; node < tree.size(); node++) {
+                if (!mentioned.contains(tree.name(node))) {
+                    deletes.add(tree.id(node));
+                    deleted[node] = true;
+                }
+            }
+            // A kept category whose parent is deleted and which the file gives no parent becomes a root category
+            for (int node = 0; node < tree.size(); node++) {
+                int parent = tree.parent(node);
+                if (parent != CategoryTreeSnapshot.NONE && deleted[parent] && !deleted[node]
+                        && !newParents.containsKey(tree.name(node))) {
+                    moves.add(new Move(tree.name(node), null, true));
+                }
+            }
+        }
+        if (deleteMissing && !tree.isEmpty() && deletes.size() == tree.size()) {
+            throw new ImportRefusedException(rows.isEmpty()
+                    ? "The file has no rows with a category and a parent, so /upload sync would delete the whole tree."
+                    : "None of the categories of the tree are in the file, so /upload sync would delete the whole tree. "
+                            + "Use /upload without sync to add the file to the tree.");
+        }
+        return new ImportPlan(rows.size(), unchanged, new ArrayList<>(inserts), moves, deletes, skippedCycles);
+    }
+
+    /**
+     * Returns the parent a category has after the moves planned so far, null for root and new categories.
+     */
+    private static String parentOf(String category, CategoryTreeSnapshot tree, Map<String, String> newParents) {
+        if (newParents.containsKey(category)) {
+            return newParents.get(category);
+        }
+        int node = tree.indexOf(category);
+        if (node == CategoryTreeSnapshot.NONE || tree.parent(node) == CategoryTreeSnapshot.NONE) {
+            return null;
+        }
+        return tree.name(tree.parent(node));
+    }
+
+    /**
+     * Checks whether a category is the given ancestor or lies below it once the planned moves are applied.
+     */
+    private static boolean isBelow(String category, String ancestor, CategoryTreeSnapshot tree,
+                                   Map<String, String> newParents) {
+        // The planned moves never form a cycle, so the walk ends at a root; the limit guards against bad input
+        int limit = tree.size() + newParents.size() + 1;
+        for (String current = category; current != null && limit-- > 0;
+             current = parentOf(current, tree, newParents)) {
+            if (current.equals(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
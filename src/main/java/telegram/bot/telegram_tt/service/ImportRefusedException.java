@@ -0,0 +1,12 @@
+package telegram.bot.telegram_tt.service;
+
+/**
+ * Thrown when an import plan is refused before anything is written, e.g. because it would delete the whole tree.
+ * The message is meant for the user.
+ */
+public class ImportRefusedException extends RuntimeException {
+
+    public ImportRefusedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+package telegram.bot.telegram_tt.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shows the progress of an import job to the user as one message that is edited in place.
+ */
+public interface ImportStatusNotifier {
+
+    /**
+     * Sends a new status message.
+     *
+     * @param chatId chat ID
+     * @param text   status text
+     * @return future completed with the ID of the sent message
+     */
+    CompletableFuture<Integer> send(Long chatId, String text);
+
+    /**
+     * Replaces the text of a status message.
+     *
+     * @param chatId    chat ID
+     * @param messageId ID of the status message
+     * @param text      new status text
+     */
+    void edit(Long chatId, int messageId, String text);
+}
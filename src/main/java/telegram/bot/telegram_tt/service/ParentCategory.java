@@ -0,0 +1,11 @@
+package telegram.bot.telegram_tt.service;
+
+/**
+ * A category that was found as the parent for a new child category.
+ * A plain value, so callers cannot mistake it for a managed entity.
+ *
+ * @param id   category ID
+ * @param name category name
+ */
+public record ParentCategory(Long id, String name) {
+}
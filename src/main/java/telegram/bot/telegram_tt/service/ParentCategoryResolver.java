@@ -0,0 +1,82 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import telegram.bot.telegram_tt.entity.Category;
+import telegram.bot.telegram_tt.repository.CategoryRepository;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the parent category at the start of a "/addElement parent child" message.
+ * Category names may contain spaces, so the parent is the longest run of leading words that names an existing category.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ParentCategoryResolver {
+
+    private final CategoryRepository categoryRepository;
+    private final CategoryTreeCache categoryTreeCache;
+
+    /**
+     * Resolves the parent category from the words of a message.
+     * At least one word is left over for the child category.
+     * All candidate names are checked at once: against the cached tree, or with one name IN (...) query.
+     *
+     * @param words  message words after the command
+     * @param chatId chat identifier
+     * @return the parent and the number of words its name takes, empty if no prefix names a category
+     */
+    public Optional<ParentMatch> resolve(List<String> words, Long chatId) {
+        List<String> candidates = new ArrayList<>(words.size() - 1);
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < words.size() - 1; i++) {
+            if (i > 0) {
+                prefix.append(' ');
+            }
+            prefix.append(words.get(i));
+            candidates.add(prefix.toString());
+        }
+
+        Function<String, ParentCategory> lookup;
+        if (categoryTreeCache.isEnabled()) {
+            CategoryTreeSnapshot tree = categoryTreeCache.get(chatId);
+            lookup = name -> {
+                int node = tree.indexOf(name);
+                return node == CategoryTreeSnapshot.NONE ? null : new ParentCategory(tree.id(node), name);
+            };
+        } else {
+            Map<String, ParentCategory> found = categoryRepository.findByChatIdAndNameIn(chatId, candidates).stream()
+                    .collect(Collectors.toMap(Category::getName,
+                            category -> new ParentCategory(category.getId(), category.getName())));
+            lookup = found::get;
+        }
+
+        // The longest matching prefix wins
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            ParentCategory parent = lookup.apply(candidates.get(i));
+            if (parent != null) {
+                return Optional.of(new ParentMatch(parent, i + 1));
+            }
+        }
+        log.debug("No parent category among {} candidates for chatId: {}", candidates.size(), chatId);
+        return Optional.empty();
+    }
+
+    /**
+     * Parent category found at the start of a message.
+     *
+     * @param parent    parent category
+     * @param wordCount number of words the parent name takes
+     */
+    public record ParentMatch(ParentCategory parent, int wordCount) {
+    }
+}
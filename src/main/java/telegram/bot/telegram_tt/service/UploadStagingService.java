@@ -0,0 +1,114 @@
+package telegram.bot.telegram_tt.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Service for staging uploaded files on disk before they are parsed.
+ *
+ * POI reads a package opened from a file with random-access zip reads,
+ * while a package opened from a stream is first buffered in memory completely.
+ * The SHA-256 of the file is computed on the way, so a repeated upload is recognized without reading the file again.
+ */
+@Service
+@Slf4j
+public class UploadStagingService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long maxSize;
+
+    public UploadStagingService(@Value("${upload.max-size-bytes:20971520}") long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Checks a file size reported by Telegram before the file is downloaded.
+     *
+     * @param size file size in bytes, may be null if unknown
+     * @return true if the file is not larger than the configured limit
+     */
+    public boolean isAllowedSize(Long size) {
+        return size == null || size <= maxSize;
+    }
+
+    /**
+     * Copies an upload to a temporary file.
+     *
+     * @param inputStream upload contents, not closed by this method
+     * @param suffix      file name suffix, e.g. ".xlsx"
+     * @return staged file, deleted when closed
+     * @throws IOException if the upload cannot be written or exceeds the size limit
+     */
+    public StagedUpload stage(InputStream inputStream, String suffix) throws IOException {
+        Path path = Files.createTempFile("category-upload-", suffix);
+        MessageDigest digest = sha256();
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > maxSize) {
+                    throw new IOException("Uploaded file exceeds the limit of " + maxSize + " bytes.");
+                }
+                digest.update(buffer, 0, read);
+                outputStream.write(buffer, 0, read);
+            }
+            log.debug("Staged upload of {} bytes at {}", total, path);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new StagedUpload(path, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Uploaded file stored in a temporary file. Closing it deletes the file.
+     */
+    public static final class StagedUpload implements Closeable {
+        private final Path path;
+        private final String sha256;
+
+        private StagedUpload(Path path, String sha256) {
+            this.path = path;
+            this.sha256 = sha256;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the SHA-256 of the file as 64 lowercase hex digits.
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package telegram.bot.telegram_tt.tree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary form of a category tree, used for snapshots.
+ *
+ * Categories are numbered in depth-first pre-order, so every parent comes before its children. The encoded
+ * form holds a deduplicated string table, followed by one varint per category with the distance back to its
+ * parent (0 for root categories), and one varint per category with the index of its name in the table if the
+ * names do not simply follow the category order. Everything after the format byte is deflated.
+ * IDs are not stored; a restored tree gets new ones.
+ */
+public final class CategoryTreeCodec {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_NAMES_IN_ORDER = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Longest name in UTF-8: category.name is varchar(255) and a character takes at most four bytes.
+     */
+    private static final int MAX_NAME_BYTES = 255 * 4;
+    /**
+     * Capacity the decoded arrays start with, whatever count the data claims.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private CategoryTreeCodec() {
+    }
+
+    /**
+     * Encodes a tree.
+     *
+     * @param snapshot category tree
+     * @return encoded tree
+     */
+    public static byte[] encode(CategoryTreeSnapshot snapshot) {
+        int size = snapshot.size();
+        int[] order = new int[size];
+        int[] parentOrder = new int[size];
+        int[] nameIndex = new int[size];
+        String[] strings = new String[size];
+        Map<String, Integer> stringIndex = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+        int[] counters = new int[2];
+        boolean[] namesInOrder = {true};
+
+        // Number the categories in depth-first order and build the string table
+        snapshot.depthFirst((node, depth) -> {
+            int position = counters[0]++;
+            order[node] = position;
+            int parent = snapshot.parent(node);
+            parentOrder[position] = parent == CategoryTreeSnapshot.NONE ? -1 : order[parent];
+            Integer index = stringIndex.putIfAbsent(snapshot.name(node), counters[1]);
+            if (index == null) {
+                index = counters[1];
+                strings[counters[1]++] = snapshot.name(node);
+            }
+            nameIndex[position] = index;
+            namesInOrder[0] &= index == position;
+            return true;
+        });
+        int count = counters[0];
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, count * 8));
+        bytes.write(FORMAT_VERSION);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (OutputStream out = new DeflaterOutputStream(bytes, deflater, BUFFER_SIZE)) {
+            byte[] scratch = new byte[10];
+            writeVarint(out, scratch, count);
+            writeVarint(out, scratch, counters[1]);
+            for (int i = 0; i < counters[1]; i++) {
+                byte[] utf8 = strings[i].getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, scratch, utf8.length);
+                out.write(utf8);
+            }
+            out.write(namesInOrder[0] ? FLAG_NAMES_IN_ORDER : 0);
+            for (int position = 0; position < count; position++) {
+                int parent = parentOrder[position];
+                writeVarint(out, scratch, parent < 0 ? 0 : position - parent);
+            }
+            if (!namesInOrder[0]) {
+                for (int position = 0; position < count; position++) {
+                    writeVarint(out, scratch, nameIndex[position]);
+                }
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a tree.
+     *
+     * @param data encoded tree
+     * @return names and parents of the categories in depth-first order
+     * @throws IOException if the data is not an encoded tree
+     */
+    public static DecodedTree decode(byte[] data) throws IOException {
+        if (data.length == 0 || data[0] != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format.");
+        }
+        try (InputStream in = new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(data, 1, data.length - 1)), BUFFER_SIZE)) {
+            // The counts are checked, but not trusted for allocation: the arrays grow with what is actually read,
+            // so a corrupt count ends in an EOFException instead of a huge allocation
+            int count = readVarint(in);
+            int stringCount = readVarint(in);
+            if (count < 0 || stringCount < 0 || stringCount > count) {
+                throw new IOException("Corrupt snapshot: invalid category count.");
+            }
+            String[] strings = new String[Math.min(stringCount, INITIAL_CAPACITY)];
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < stringCount; i++) {
+                int length = readVarint(in);
+                if (length < 0 || length > MAX_NAME_BYTES) {
+                    throw new IOException("Corrupt snapshot: invalid length of name " + i + ".");
+                }
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                readFully(in, buffer, length);
+                if (i == strings.length) {
+                    strings = Arrays.copyOf(strings, grow(strings.length, stringCount));
+                }
+                strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            int flags = in.read();
+            if (flags < 0) {
+                throw new EOFException("Corrupt snapshot: unexpected end of data.");
+            }
+            boolean namesInOrder = (flags & FLAG_NAMES_IN_ORDER) != 0;
+            int[] parents = new int[Math.min(count, INITIAL_CAPACITY)];
+            for (int position = 0; position < count; position++) {
+                int distance = readVarint(in);
+                if (distance < 0 || distance > position) {
+                    throw new IOException("Corrupt snapshot: parent of category " + position + " is out of range.");
+                }
+                if (position == parents.length) {
+                    parents = Arrays.copyOf(parents, grow(parents.length, count));
+                }
+                parents[position] = distance == 0 ? -1 : position - distance;
+            }
+            // All parents were read, so count is backed by data and the names can be allocated at once
+            String[] names = new String[count];
+            for (int position = 0; position < count; position++) {
+                int index = namesInOrder ? position : readVarint(in);
+                if (index < 0 || index >= stringCount) {
+                    throw new IOException("Corrupt snapshot: name of category " + position + " is out of range.");
+                }
+                names[position] = strings[index];
+            }
+            return new DecodedTree(names, parents);
+        }
+    }
+
+    private static int grow(int capacity, int max) {
+        return (int) Math.min(max, Math.max(1L, capacity * 2L));
+    }
+
+    private static void writeVarint(OutputStream out, byte[] scratch, int value) throws IOException {
+        int length = 0;
+        while ((value & ~0x7F) != 0) {
+            scratch[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        scratch[length++] = (byte) value;
+        out.write(scratch, 0, length);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Corrupt snapshot: unexpected end of data.");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt snapshot: varint is too long.");
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(buffer, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Corrupt snapshot: unexpected end of data.");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Decoded category tree in depth-first pre-order.
+     *
+     * @param names   category names
+     * @param parents index of the parent of each category, always lower than the index of the category;
+     *                -1 for root categories
+     */
+    public record DecodedTree(String[] names, int[] parents) {
+
+        public int size() {
+            return names.length;
+        }
+    }
+}
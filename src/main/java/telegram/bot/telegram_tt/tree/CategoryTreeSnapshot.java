@@ -0,0 +1,232 @@
+package telegram.bot.telegram_tt.tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable category tree of a chat stored in primitive arrays.
+ *
+ * Every category is a node index into parallel arrays: the ID, an entry of the name table and the indexes of
+ * the parent, the first child and the next sibling (NONE if there is none). Root categories are chained with
+ * nextSibling starting at firstRoot. Traversals are iterative, so deep trees cannot overflow the stack,
+ * and depth-first traversal allocates nothing per category.
+ */
+public final class CategoryTreeSnapshot {
+
+    /**
+     * Index used for a missing parent, child or sibling.
+     */
+    public static final int NONE = -1;
+
+    private final long[] ids;
+    private final String[] names;
+    private final int[] parent;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int firstRoot;
+    private final Map<String, Integer> indexByName;
+
+    private CategoryTreeSnapshot(long[] ids, String[] names, int[] parent, int[] firstChild, int[] nextSibling,
+                                 int firstRoot, Map<String, Integer> indexByName) {
+        this.ids = ids;
+        this.names = names;
+        this.parent = parent;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.firstRoot = firstRoot;
+        this.indexByName = indexByName;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public long id(int node) {
+        return ids[node];
+    }
+
+    public String name(int node) {
+        return names[node];
+    }
+
+    public int parent(int node) {
+        return parent[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int firstRoot() {
+        return firstRoot;
+    }
+
+    /**
+     * Returns the index of a category.
+     *
+     * @param name category name
+     * @return node index, NONE if the tree has no such category
+     */
+    public int indexOf(String name) {
+        Integer node = indexByName.get(name);
+        return node == null ? NONE : node;
+    }
+
+    public boolean contains(String name) {
+        return indexByName.containsKey(name);
+    }
+
+    /**
+     * Visits the categories in depth-first pre-order: every category is followed by its subtree.
+     *
+     * @param visitor receives the categories, may stop the traversal
+     */
+    public void depthFirst(CategoryTreeVisitor visitor) {
+        int node = firstRoot;
+        int depth = 0;
+        while (node != NONE) {
+            if (!visitor.visit(node, depth)) {
+                return;
+            }
+            if (firstChild[node] != NONE) {
+                node = firstChild[node];
+                depth++;
+                continue;
+            }
+            // Climb up until a category with a next sibling is found
+            while (node != NONE && nextSibling[node] == NONE) {
+                node = parent[node];
+                depth--;
+            }
+            if (node != NONE) {
+                node = nextSibling[node];
+            }
+        }
+    }
+
+    /**
+     * Visits the categories level by level: all root categories first, then their children and so on.
+     *
+     * @param visitor receives the categories, may stop the traversal
+     */
+    public void breadthFirst(CategoryTreeVisitor visitor) {
+        int[] queue = new int[ids.length];
+        int[] depths = new int[ids.length];
+        int head = 0;
+        int tail = 0;
+        for (int root = firstRoot; root != NONE; root = nextSibling[root]) {
+            queue[tail++] = root;
+        }
+        while (head < tail) {
+            int node = queue[head];
+            int depth = depths[head++];
+            if (!visitor.visit(node, depth)) {
+                return;
+            }
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                depths[tail] = depth + 1;
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Builds a snapshot from categories added in depth-first pre-order.
+     */
+    public static final class Builder {
+        private long[] ids;
+        private String[] names;
+        private int[] parent;
+        private int[] firstChild;
+        private int[] nextSibling;
+        private int[] lastChild;
+        private int[] lastAtDepth = new int[16];
+        private int firstRoot = NONE;
+        private int lastRoot = NONE;
+        private int size;
+        private final Map<String, Integer> indexByName;
+
+        /**
+         * @param expectedSize expected number of categories, the arrays grow if more are added
+         */
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 1);
+            ids = new long[capacity];
+            names = new String[capacity];
+            parent = new int[capacity];
+            firstChild = new int[capacity];
+            nextSibling = new int[capacity];
+            lastChild = new int[capacity];
+            indexByName = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+        }
+
+        /**
+         * Adds the next category. Its parent is the last category added one level above it.
+         *
+         * @param id    category ID
+         * @param name  category name
+         * @param depth distance from the root category, at most one more than the depth of the previous category
+         * @return this builder
+         */
+        public Builder add(long id, String name, int depth) {
+            if (size == ids.length) {
+                grow();
+            }
+            if (depth >= lastAtDepth.length) {
+                lastAtDepth = Arrays.copyOf(lastAtDepth, Math.max(lastAtDepth.length * 2, depth + 1));
+            }
+            int node = size++;
+            ids[node] = id;
+            names[node] = name;
+            firstChild[node] = NONE;
+            nextSibling[node] = NONE;
+            lastChild[node] = NONE;
+            if (depth == 0) {
+                parent[node] = NONE;
+                if (lastRoot == NONE) {
+                    firstRoot = node;
+                } else {
+                    nextSibling[lastRoot] = node;
+                }
+                lastRoot = node;
+            } else {
+                int p = lastAtDepth[depth - 1];
+                parent[node] = p;
+                if (lastChild[p] == NONE) {
+                    firstChild[p] = node;
+                } else {
+                    nextSibling[lastChild[p]] = node;
+                }
+                lastChild[p] = node;
+            }
+            lastAtDepth[depth] = node;
+            indexByName.put(name, node);
+            return this;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+        }
+
+        public CategoryTreeSnapshot build() {
+            return new CategoryTreeSnapshot(Arrays.copyOf(ids, size), Arrays.copyOf(names, size),
+                    Arrays.copyOf(parent, size), Arrays.copyOf(firstChild, size), Arrays.copyOf(nextSibling, size),
+                    firstRoot, indexByName);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package telegram.bot.telegram_tt.tree;
+
+/**
+ * Receives the categories of a CategoryTreeSnapshot during a traversal.
+ */
+@FunctionalInterface
+public interface CategoryTreeVisitor {
+
+    /**
+     * Visits one category.
+     *
+     * @param node  index of the category in the snapshot
+     * @param depth distance from the root category, 0 for root categories
+     * @return true to continue the traversal, false to stop it
+     */
+    boolean visit(int node, int depth);
+}
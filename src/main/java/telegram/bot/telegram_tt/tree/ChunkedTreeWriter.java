@@ -0,0 +1,108 @@
+package telegram.bot.telegram_tt.tree;
+
+import java.util.function.Consumer;
+
+/**
+ * Writes the lines of a rendered category tree as message-sized chunks.
+ *
+ * Lines are never split between chunks; a chunk is handed to the sink as soon as the next line does not fit.
+ * In page mode only the requested chunk is built: earlier lines are only measured, and the writer asks the
+ * traversal to stop once the page is complete.
+ */
+public class ChunkedTreeWriter {
+
+    private static final String INDENT = "    ";
+    private static final String BULLET = "-   ";
+
+    private final int maxLength;
+    private final int page;
+    private final Consumer<String> sink;
+    private final StringBuilder chunk;
+    private int chunkLength;
+    private int currentPage = 1;
+    private boolean stopped;
+
+    /**
+     * @param maxLength maximum length of one chunk
+     * @param page      1-based number of the only chunk to write, 0 to write all chunks
+     * @param sink      receives the chunks in order
+     */
+    public ChunkedTreeWriter(int maxLength, int page, Consumer<String> sink) {
+        this.maxLength = maxLength;
+        this.page = page;
+        this.sink = sink;
+        this.chunk = new StringBuilder(Math.min(maxLength, 1024));
+    }
+
+    /**
+     * Adds the line of one category.
+     *
+     * @param name  category name
+     * @param depth nesting level of the category
+     * @return false once the requested page is complete and the rest of the tree can be skipped
+     */
+    public boolean line(String name, int depth) {
+        // Lines that would not fit into a message on their own are shortened
+        int shownDepth = Math.min(depth, maxLength / 2 / INDENT.length());
+        int room = maxLength - shownDepth * INDENT.length() - BULLET.length() - 1;
+        if (name.length() > room) {
+            name = name.substring(0, room - 1) + "…";
+        }
+        int length = shownDepth * INDENT.length() + BULLET.length() + name.length() + 1;
+
+        if (chunkLength + length > maxLength) {
+            flush();
+            if (page > 0 && currentPage > page) {
+                stopped = true;
+                return false;
+            }
+        }
+        if (page == 0 || currentPage == page) {
+            for (int i = 0; i < shownDepth; i++) {
+                chunk.append(INDENT);
+            }
+            chunk.append(BULLET).append(name).append('\n');
+        }
+        chunkLength += length;
+        return true;
+    }
+
+    /**
+     * Hands over the last chunk once the traversal is over.
+     */
+    public void finish() {
+        if (!stopped && chunkLength > 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns whether the traversal was stopped after the requested page, i.e. more pages follow.
+     */
+    public boolean hasMorePages() {
+        return stopped;
+    }
+
+    /**
+     * Returns whether the requested page (or, without a page, any chunk) was handed to the sink.
+     */
+    public boolean hasWritten() {
+        return page == 0 ? currentPage > 1 : currentPage > page;
+    }
+
+    /**
+     * Returns the number of chunks the whole tree takes. Only known if the traversal was not stopped.
+     */
+    public int pageCount() {
+        return currentPage - 1;
+    }
+
+    private void flush() {
+        if (page == 0 || currentPage == page) {
+            sink.accept(chunk.toString());
+        }
+        chunk.setLength(0);
+        chunkLength = 0;
+        currentPage++;
+    }
+}
@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS category_tree_version (
+    chat_id bigint not null,
+    version bigint not null,
+    primary key (chat_id)
+);
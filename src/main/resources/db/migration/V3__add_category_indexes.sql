@@ -0,0 +1,18 @@
+-- Categories with the same name in a chat are merged into the oldest one before the unique constraint is added
+UPDATE category child
+SET parent_id = kept.id
+FROM category duplicate
+JOIN (SELECT chat_id, name, min(id) AS id FROM category GROUP BY chat_id, name) kept
+    ON kept.chat_id = duplicate.chat_id AND kept.name = duplicate.name AND kept.id <> duplicate.id
+WHERE child.parent_id = duplicate.id
+  AND child.id <> kept.id;
+
+DELETE FROM category duplicate
+USING category kept
+WHERE kept.chat_id = duplicate.chat_id
+  AND kept.name = duplicate.name
+  AND kept.id < duplicate.id;
+
+ALTER TABLE category ADD CONSTRAINT uk_category_chat_id_name UNIQUE (chat_id, name);
+
+CREATE INDEX IF NOT EXISTS idx_category_chat_id_parent_id ON category (chat_id, parent_id);
@@ -0,0 +1,22 @@
+-- Closure table of the category hierarchy: one row for every (ancestor, descendant) pair,
+-- including a row with depth 0 that links every category to itself
+CREATE TABLE IF NOT EXISTS category_closure (
+    ancestor_id bigint not null references category (id) on delete cascade,
+    descendant_id bigint not null references category (id) on delete cascade,
+    depth int not null,
+    primary key (ancestor_id, descendant_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_category_closure_descendant_id ON category_closure (descendant_id, depth);
+
+-- Backfill from the parent links. A walk stops when it comes back to its start, so cycles cannot loop forever
+WITH RECURSIVE paths AS (
+    SELECT id AS ancestor_id, id AS descendant_id, 0 AS depth FROM category
+    UNION ALL
+    SELECT paths.ancestor_id, c.id, paths.depth + 1
+    FROM paths
+    JOIN category c ON c.parent_id = paths.descendant_id
+    WHERE c.id <> paths.ancestor_id
+)
+INSERT INTO category_closure (ancestor_id, descendant_id, depth)
+SELECT ancestor_id, descendant_id, depth FROM paths;
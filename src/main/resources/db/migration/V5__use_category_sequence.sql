@@ -0,0 +1,13 @@
+-- Category IDs come from a sequence that hands out blocks of 50 IDs (see Category.ID_ALLOCATION_SIZE).
+-- With the pooled optimizer a value N stands for the block N - 49 .. N, so the sequence starts
+-- 50 above the largest existing ID and existing IDs are kept
+CREATE SEQUENCE IF NOT EXISTS category_seq INCREMENT BY 50;
+
+SELECT setval('category_seq', coalesce((SELECT max(id) FROM category), 0) + 50, false);
+
+ALTER TABLE category ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+-- Rows inserted by SQL statements take a whole block each, so they never collide with blocks used by Hibernate
+ALTER TABLE category ALTER COLUMN id SET DEFAULT nextval('category_seq');
+
+ALTER SEQUENCE category_seq OWNED BY category.id;
@@ -0,0 +1,31 @@
+-- Background imports of uploaded files. A job moves from QUEUED to RUNNING and ends as DONE, FAILED or ROLLED_BACK
+CREATE TABLE IF NOT EXISTS import_job (
+    id bigint generated by default as identity,
+    chat_id bigint not null,
+    status varchar(16) not null,
+    file_path varchar(1024),
+    status_message_id integer,
+    rows_total integer not null default 0,
+    rows_done integer not null default 0,
+    inserted integer not null default 0,
+    linked integer not null default 0,
+    error varchar(1024),
+    created_at timestamp not null default now(),
+    updated_at timestamp not null default now(),
+    primary key (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_job_status ON import_job (status);
+
+-- Categories created by an import keep the job ID, so an interrupted import can be rolled back
+ALTER TABLE category ADD COLUMN IF NOT EXISTS import_job_id bigint;
+
+CREATE INDEX IF NOT EXISTS idx_category_import_job_id ON category (import_job_id) WHERE import_job_id IS NOT NULL;
+
+-- Previous parents of existing categories moved by an import
+CREATE TABLE IF NOT EXISTS import_job_undo (
+    job_id bigint not null references import_job (id) on delete cascade,
+    category_id bigint not null,
+    old_parent_id bigint,
+    primary key (job_id, category_id)
+);
@@ -0,0 +1,2 @@
+-- Imports uploaded with /upload sync also delete the categories missing from the file
+ALTER TABLE import_job ADD COLUMN IF NOT EXISTS delete_missing boolean not null default false;
@@ -0,0 +1,12 @@
+-- SHA-256 of the last file imported into each chat and the tree version the import left behind.
+-- While the version is unchanged, the same file would change nothing and is not imported again
+CREATE TABLE IF NOT EXISTS upload_digest (
+    chat_id bigint not null,
+    sha256 char(64) not null,
+    tree_version bigint not null,
+    delete_missing boolean not null,
+    imported_at timestamp not null default now(),
+    primary key (chat_id)
+);
+
+ALTER TABLE import_job ADD COLUMN IF NOT EXISTS sha256 char(64);
@@ -0,0 +1,11 @@
+-- Binary snapshots of whole category trees, see CategoryTreeCodec. Only the latest snapshots of each chat are kept
+CREATE TABLE IF NOT EXISTS category_snapshot (
+    id bigint generated by default as identity,
+    chat_id bigint not null,
+    node_count integer not null,
+    data bytea not null,
+    created_at timestamp not null default now(),
+    primary key (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_category_snapshot_chat_id ON category_snapshot (chat_id, id);
@@ -0,0 +1,75 @@
+package telegram.bot.telegram_tt.bot;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that updates arriving around a shutdown give their queue capacity back.
+ */
+class UpdateDispatcherTest {
+
+    @Test
+    void updateAfterShutdownIsDropped() throws InterruptedException {
+        UpdateDispatcher dispatcher = new UpdateDispatcher(1, 10);
+        dispatcher.shutdown();
+        AtomicInteger handled = new AtomicInteger();
+
+        assertTrue(dispatcher.tryDispatch(update(1), u -> handled.incrementAndGet(), 100));
+
+        assertEquals(0, handled.get());
+        assertEquals(0, dispatcher.getQueuedUpdates());
+        assertEquals(0, dispatcher.getActiveChats());
+    }
+
+    @Test
+    void laneRequeuedAfterShutdownReleasesItsUpdates() throws InterruptedException {
+        UpdateDispatcher dispatcher = new UpdateDispatcher(1, 100);
+        AtomicInteger handled = new AtomicInteger();
+        AtomicReference<Thread> stopper = new AtomicReference<>();
+        for (int i = 0; i < 20; i++) {
+            dispatcher.dispatch(update(i), u -> {
+                if (handled.getAndIncrement() == 0) {
+                    // Shut down while the lane is being drained, then let it finish its batch
+                    Thread thread = new Thread(() -> {
+                        try {
+                            dispatcher.shutdown();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    thread.start();
+                    stopper.set(thread);
+                    while (thread.getState() != Thread.State.TIMED_WAITING) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+        while (stopper.get() == null) {
+            Thread.onSpinWait();
+        }
+        stopper.get().join();
+
+        // One batch of 16 is handled; the other updates cannot be scheduled again and are dropped
+        assertEquals(16, handled.get());
+        assertEquals(0, dispatcher.getQueuedUpdates());
+        assertEquals(0, dispatcher.getActiveChats());
+    }
+
+    private static Update update(int id) {
+        Message message = new Message();
+        message.setChat(new Chat(1L, "private"));
+        Update update = new Update();
+        update.setUpdateId(id);
+        update.setMessage(message);
+        return update;
+    }
+}
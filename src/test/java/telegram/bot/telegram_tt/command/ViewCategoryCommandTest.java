@@ -0,0 +1,76 @@
+package telegram.bot.telegram_tt.command;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.telegram_tt.bot.OutboundScheduler;
+import telegram.bot.telegram_tt.facade.CategoryFacade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Checks how the arguments of /viewTree are read.
+ */
+class ViewCategoryCommandTest {
+
+    private static final Long CHAT_ID = 42L;
+    private static final int LIMIT = OutboundScheduler.MAX_MESSAGE_LENGTH;
+
+    private final CategoryFacade categoryFacade = mock(CategoryFacade.class);
+    private final ViewCategoryCommand command = new ViewCategoryCommand(categoryFacade);
+    private final List<String> messages = new ArrayList<>();
+    private final Consumer<String> sink = messages::add;
+
+    @Test
+    void noArgumentsShowsWholeTree() {
+        command.executeStreaming("/viewTree", CHAT_ID, sink);
+
+        verify(categoryFacade).streamCategoryTree(CHAT_ID, 0, LIMIT, sink);
+    }
+
+    @Test
+    void namedPageShowsOnePage() {
+        command.executeStreaming("/viewTree page=2", CHAT_ID, sink);
+
+        verify(categoryFacade).streamCategoryTree(CHAT_ID, 2, LIMIT, sink);
+    }
+
+    @Test
+    void numericNamesAreCategories() {
+        command.executeStreaming("/viewTree 2024", CHAT_ID, sink);
+        command.executeStreaming("/viewTree iPhone 15", CHAT_ID, sink);
+
+        verify(categoryFacade).streamSubtree("2024", CHAT_ID, Integer.MAX_VALUE, LIMIT, sink);
+        verify(categoryFacade).streamSubtree("iPhone 15", CHAT_ID, Integer.MAX_VALUE, LIMIT, sink);
+        verify(categoryFacade, never()).streamCategoryTree(anyLong(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void namedDepthLimitsSubtree() {
+        command.executeStreaming("/viewTree iPhone 15 depth=1", CHAT_ID, sink);
+
+        verify(categoryFacade).streamSubtree("iPhone 15", CHAT_ID, 1, LIMIT, sink);
+    }
+
+    @Test
+    void misplacedOptionsAreExplained() {
+        command.executeStreaming("/viewTree depth=2", CHAT_ID, sink);
+        command.executeStreaming("/viewTree Phones page=2", CHAT_ID, sink);
+        command.executeStreaming("/viewTree page=0", CHAT_ID, sink);
+
+        assertEquals(List.of("Name a category to limit the depth, e.g. /viewTree Electronics depth=2.",
+                "Pages are only available for the whole tree, e.g. /viewTree page=2.",
+                "Page numbers start at 1."), messages);
+        verify(categoryFacade, never()).streamSubtree(anyString(), anyLong(), anyInt(), anyInt(), any());
+        verify(categoryFacade, never()).streamCategoryTree(anyLong(), anyInt(), anyInt(), any());
+    }
+}
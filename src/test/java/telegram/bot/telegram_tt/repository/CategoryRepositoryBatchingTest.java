@@ -0,0 +1,65 @@
+package telegram.bot.telegram_tt.repository;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import telegram.bot.telegram_tt.entity.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that bulk saves of categories are sent to the database as JDBC batches.
+ * The migrations are written for PostgreSQL, so the schema of the embedded database is generated from the entities.
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class CategoryRepositoryBatchingTest {
+
+    private static final int ROOTS = 10;
+    private static final int CHILDREN_PER_ROOT = 50;
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void bulkSaveIsSentAsBatches() {
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < ROOTS; i++) {
+            Category root = Category.builder().name("Root " + i).chatId(1L).children(new ArrayList<>()).build();
+            categories.add(root);
+            for (int j = 0; j < CHILDREN_PER_ROOT; j++) {
+                categories.add(Category.builder().name("Child " + i + "." + j).chatId(1L).parent(root)
+                        .children(new ArrayList<>()).build());
+            }
+        }
+        categoryRepository.saveAll(categories);
+        entityManager.flush();
+
+        int rows = ROOTS * (1 + CHILDREN_PER_ROOT);
+        long sequenceCalls = (rows + Category.ID_ALLOCATION_SIZE - 1) / Category.ID_ALLOCATION_SIZE + 1;
+        long insertBatches = (rows + BATCH_SIZE - 1) / BATCH_SIZE;
+        assertEquals(rows, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= sequenceCalls + insertBatches,
+                "Inserts should be sent as batches, got " + statistics.getPrepareStatementCount() + " statements");
+    }
+}
@@ -0,0 +1,128 @@
+package telegram.bot.telegram_tt.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares reading the same tree of 200,000 categories from CSV, TSV and .xlsx files.
+ *
+ * Timings depend on the machine, so the benchmark is not part of the normal build. Run it with
+ * {@code mvn test -Dtest=CategoryDelimitedReaderBenchmarkTest -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CategoryDelimitedReaderBenchmarkTest {
+
+    private static final int ROWS = 200_000;
+
+    private static CategoryTreeSnapshot tree;
+    private static Path xlsx;
+    private static Path csv;
+    private static Path tsv;
+
+    private final CategoryExcelReader excelReader = new CategoryExcelReader();
+    private final CategoryDelimitedReader delimitedReader = new CategoryDelimitedReader();
+
+    @BeforeAll
+    static void generateFiles() throws IOException {
+        // Chains of ten levels, so every category but the first of a chain has a parent
+        CategoryTreeSnapshot.Builder builder = new CategoryTreeSnapshot.Builder(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            builder.add(i + 1, "Category " + (i + 1), i % 10);
+        }
+        tree = builder.build();
+
+        CategoryDelimitedWriter writer = new CategoryDelimitedWriter();
+        csv = write(DelimitedFormat.CSV, writer);
+        tsv = write(DelimitedFormat.TSV, writer);
+
+        xlsx = Files.createTempFile("category-tree-", ".xlsx");
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream outputStream = Files.newOutputStream(xlsx)) {
+            Sheet sheet = workbook.createSheet(CategoryExcelReader.SHEET_NAME);
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Category");
+            header.createCell(1).setCellValue("Parent Category");
+            int[] rowIndex = {1};
+            tree.depthFirst((node, depth) -> {
+                Row row = sheet.createRow(rowIndex[0]++);
+                row.createCell(0).setCellValue(tree.name(node));
+                int parent = tree.parent(node);
+                row.createCell(1).setCellValue(parent != CategoryTreeSnapshot.NONE ? tree.name(parent) : "-");
+                return true;
+            });
+            workbook.write(outputStream);
+            workbook.dispose();
+        }
+    }
+
+    private static Path write(DelimitedFormat format, CategoryDelimitedWriter writer) throws IOException {
+        Path file = Files.createTempFile("category-tree-", "." + format.getExtension());
+        try (Writer fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(tree, fileWriter, format);
+        }
+        return file;
+    }
+
+    @AfterAll
+    static void deleteFiles() throws IOException {
+        Files.deleteIfExists(xlsx);
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(tsv);
+    }
+
+    @Test
+    void delimitedReadIsFasterThanXlsx() throws IOException {
+        // One untimed pass of each reader, so class loading and JIT compilation are not measured
+        excelReader.read(xlsx, (category, parent) -> { });
+        delimitedReader.read(csv, DelimitedFormat.CSV, (category, parent) -> { });
+
+        AtomicInteger xlsxRows = new AtomicInteger();
+        long xlsxMillis = measure(() -> excelReader.read(xlsx, (category, parent) -> xlsxRows.incrementAndGet()));
+        AtomicInteger csvRows = new AtomicInteger();
+        long csvMillis = measure(() -> delimitedReader.read(csv, DelimitedFormat.CSV,
+                (category, parent) -> csvRows.incrementAndGet()));
+        AtomicInteger tsvRows = new AtomicInteger();
+        long tsvMillis = measure(() -> delimitedReader.read(tsv, DelimitedFormat.TSV,
+                (category, parent) -> tsvRows.incrementAndGet()));
+
+        System.out.printf("%d rows: xlsx %d ms (%d rows/s, %d KB); csv %d ms (%d rows/s, %d KB); tsv %d ms (%d rows/s, %d KB)%n",
+                ROWS, xlsxMillis, rate(xlsxMillis), Files.size(xlsx) / 1024, csvMillis, rate(csvMillis),
+                Files.size(csv) / 1024, tsvMillis, rate(tsvMillis), Files.size(tsv) / 1024);
+        assertEquals(ROWS, xlsxRows.get());
+        assertEquals(ROWS, csvRows.get());
+        assertEquals(ROWS, tsvRows.get());
+        assertTrue(csvMillis < xlsxMillis, "Reading CSV should be faster than reading .xlsx");
+        assertTrue(tsvMillis < xlsxMillis, "Reading TSV should be faster than reading .xlsx");
+    }
+
+    private static long measure(IoAction action) throws IOException {
+        long start = System.nanoTime();
+        action.run();
+        return Math.max(1, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static long rate(long millis) {
+        return ROWS * 1000L / millis;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,114 @@
+package telegram.bot.telegram_tt.service;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how CSV and TSV rows are parsed and that names survive a write and read round trip.
+ */
+class CategoryDelimitedReaderTest {
+
+    private final CategoryDelimitedReader delimitedReader = new CategoryDelimitedReader();
+    private final CategoryDelimitedWriter delimitedWriter = new CategoryDelimitedWriter();
+
+    @Test
+    void namesSurviveRoundTrip() throws IOException {
+        List<String> names = List.of("Plain", "With, comma", "With \"quotes\"", "Multi\nline", "Tab\there", "Ünïcödé");
+        CategoryTreeSnapshot.Builder builder = new CategoryTreeSnapshot.Builder(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            builder.add(i + 1, names.get(i), i == 0 ? 0 : 1);
+        }
+        CategoryTreeSnapshot snapshot = builder.build();
+
+        for (DelimitedFormat format : DelimitedFormat.values()) {
+            Path file = Files.createTempFile("category-round-trip-", "." + format.getExtension());
+            try {
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    delimitedWriter.write(snapshot, writer, format);
+                }
+                List<String> categories = new ArrayList<>();
+                List<String> parents = new ArrayList<>();
+                delimitedReader.read(file, format, (category, parent) -> {
+                    categories.add(category);
+                    parents.add(parent);
+                });
+
+                assertEquals(names.size(), categories.size(), format.name());
+                assertEquals("-", parents.get(0));
+                for (int i = 1; i < names.size(); i++) {
+                    assertEquals("Plain", parents.get(i));
+                    String expected = format.isQuoted()
+                            ? names.get(i)
+                            : names.get(i).replace('\t', ' ').replace('\n', ' ');
+                    assertEquals(expected, categories.get(i), format.name());
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    void quoteInsideLaterColumnDoesNotOpenQuotedField() throws IOException {
+        CategoryRows rows = read("Category,Parent Category,Note\nA,-,x\"y,z\nB,A\nC,A\n", DelimitedFormat.CSV);
+
+        assertEquals(Map.of("A", "-", "B", "A", "C", "A"), rows.getRows());
+        assertEquals(0, rows.getSkipped());
+    }
+
+    @Test
+    void quotedFieldsMayHoldSeparatorsAndLineBreaks() throws IOException {
+        CategoryRows rows = read("Category,Parent Category\r\n\"Phones, cases\",-\r\n\"Say \"\"hi\"\"\nthere\",\"Phones, cases\"\r\n",
+                DelimitedFormat.CSV);
+
+        assertEquals(Map.of("Phones, cases", "-", "Say \"hi\"\nthere", "Phones, cases"), rows.getRows());
+    }
+
+    @Test
+    void byteOrderMarkAndBlankLinesAreIgnored() throws IOException {
+        CategoryRows rows = read("\uFEFFCategory\tParent Category\n\nA\t-\n\nB\tA", DelimitedFormat.TSV);
+
+        assertEquals(Map.of("A", "-", "B", "A"), rows.getRows());
+    }
+
+    @Test
+    void rowsWithoutParentAreSkipped() throws IOException {
+        CategoryRows rows = read("Category,Parent Category\nA,-\nB,\n,A\nC,A\n", DelimitedFormat.CSV);
+
+        assertEquals(Map.of("A", "-", "C", "A"), rows.getRows());
+        assertEquals(2, rows.getSkipped());
+        assertTrue(rows.describeSkipped().contains("3, 4"), rows.describeSkipped());
+    }
+
+    @Test
+    void fileWithAnotherSeparatorYieldsNoRows() throws IOException {
+        CategoryRows rows = read("Category;Parent Category\nA;-\nB;A\n", DelimitedFormat.CSV);
+
+        assertTrue(rows.getRows().isEmpty());
+        assertEquals(2, rows.getSkipped());
+    }
+
+    private CategoryRows read(String content, DelimitedFormat format) throws IOException {
+        Path file = Files.createTempFile("category-rows-", "." + format.getExtension());
+        try {
+            Files.writeString(file, content, StandardCharsets.UTF_8);
+            CategoryRows rows = new CategoryRows();
+            delimitedReader.read(file, format, rows);
+            return rows;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
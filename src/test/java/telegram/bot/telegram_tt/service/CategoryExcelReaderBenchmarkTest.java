@@ -0,0 +1,118 @@
+package telegram.bot.telegram_tt.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the streaming .xlsx reader with reading the same file through the XSSFWorkbook object model,
+ * by time and peak heap, on a generated tree of 200,000 categories.
+ *
+ * Timings depend on the machine, so the benchmark is not part of the normal build. Run it with
+ * {@code mvn test -Dtest=CategoryExcelReaderBenchmarkTest -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CategoryExcelReaderBenchmarkTest {
+
+    private static final int ROWS = 200_000;
+
+    private static Path xlsx;
+
+    private final CategoryExcelReader excelReader = new CategoryExcelReader();
+
+    @BeforeAll
+    static void generateWorkbook() throws IOException {
+        xlsx = Files.createTempFile("category-tree-", ".xlsx");
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream outputStream = Files.newOutputStream(xlsx)) {
+            Sheet sheet = workbook.createSheet(CategoryExcelReader.SHEET_NAME);
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Category");
+            header.createCell(1).setCellValue("Parent Category");
+            for (int i = 1; i <= ROWS; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("Category " + i);
+                row.createCell(1).setCellValue(i == 1 ? "-" : "Category " + (i / 2));
+            }
+            workbook.write(outputStream);
+            workbook.dispose();
+        }
+    }
+
+    @AfterAll
+    static void deleteWorkbook() throws IOException {
+        Files.deleteIfExists(xlsx);
+    }
+
+    @Test
+    void streamingReadUsesLessHeapThanWorkbookModel() throws IOException {
+        AtomicInteger streamedRows = new AtomicInteger();
+        Measurement streaming = measure(() -> excelReader.read(xlsx, (category, parent) -> streamedRows.incrementAndGet()));
+        AtomicInteger modelRows = new AtomicInteger();
+        Measurement model = measure(() -> {
+            try (InputStream inputStream = Files.newInputStream(xlsx);
+                 XSSFWorkbook workbook = new XSSFWorkbook(inputStream)) {
+                XSSFSheet sheet = workbook.getSheet(CategoryExcelReader.SHEET_NAME);
+                for (int rowIndex = 1; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
+                    Row row = sheet.getRow(rowIndex);
+                    row.getCell(0).getStringCellValue();
+                    row.getCell(1).getStringCellValue();
+                    modelRows.incrementAndGet();
+                }
+            }
+        });
+
+        System.out.printf("%d rows: streaming %d ms, peak heap %d MB; XSSFWorkbook %d ms, peak heap %d MB%n",
+                ROWS, streaming.millis(), streaming.peakHeapMb(), model.millis(), model.peakHeapMb());
+        assertEquals(ROWS, streamedRows.get());
+        assertEquals(ROWS, modelRows.get());
+        assertTrue(streaming.peakHeapMb() < model.peakHeapMb(),
+                "Streaming read should need less heap than the workbook object model");
+    }
+
+    /**
+     * Runs an action after a GC and returns its wall time and the peak heap use while it ran.
+     */
+    private static Measurement measure(IoAction action) throws IOException {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        action.run();
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return new Measurement(millis, peak / (1024 * 1024));
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private record Measurement(long millis, long peakHeapMb) {
+    }
+}
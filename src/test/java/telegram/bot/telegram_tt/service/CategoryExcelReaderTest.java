@@ -0,0 +1,107 @@
+package telegram.bot.telegram_tt.service;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the rows read from the category sheet by the streaming .xlsx reader and the .xls reader.
+ */
+class CategoryExcelReaderTest {
+
+    private final CategoryExcelReader reader = new CategoryExcelReader();
+
+    @Test
+    void streamsCategoryAndParentOfEveryRow() throws IOException {
+        CategoryRows rows = read(new XSSFWorkbook(), CategoryExcelReader.SHEET_NAME, new String[][]{
+                {"Electronics", "-"},
+                {"Phones", "Electronics"},
+                {"iPhone 15", "Phones"},
+                {"Laptops", "Electronics"}
+        });
+
+        assertEquals(Map.of("Electronics", "-", "Phones", "Electronics", "iPhone 15", "Phones", "Laptops", "Electronics"),
+                rows.getRows());
+        assertEquals(0, rows.getSkipped());
+    }
+
+    @Test
+    void blankRowsAreIgnoredAndHalfFilledRowsSkipped() throws IOException {
+        CategoryRows rows = read(new XSSFWorkbook(), CategoryExcelReader.SHEET_NAME, new String[][]{
+                {"Electronics", "-"},
+                null,
+                {"Phones", null},
+                {null, "Electronics"},
+                {"", ""},
+                {"Laptops", "Electronics"}
+        });
+
+        assertEquals(Map.of("Electronics", "-", "Laptops", "Electronics"), rows.getRows());
+        assertEquals(2, rows.getSkipped());
+        assertTrue(rows.describeSkipped().contains("row 4, 5"), rows.describeSkipped());
+    }
+
+    @Test
+    void readsXlsWithTheSameRules() throws IOException {
+        CategoryRows rows = read(new HSSFWorkbook(), CategoryExcelReader.SHEET_NAME, new String[][]{
+                {"Books", "-"},
+                {"Novels", null},
+                {"Poetry", "Books"}
+        });
+
+        assertEquals(Map.of("Books", "-", "Poetry", "Books"), rows.getRows());
+        assertEquals(1, rows.getSkipped());
+    }
+
+    @Test
+    void missingSheetIsReported() {
+        assertThrows(RuntimeException.class, () -> read(new XSSFWorkbook(), "Sheet1", new String[][]{{"Books", "-"}}));
+    }
+
+    /**
+     * Writes the rows below a header row into a new file and reads it back. A null row is left blank
+     * and a null cell is not created.
+     */
+    private CategoryRows read(Workbook workbook, String sheetName, String[][] cells) throws IOException {
+        String extension = workbook instanceof HSSFWorkbook ? ".xls" : ".xlsx";
+        Path file = Files.createTempFile("category-tree-", extension);
+        try {
+            try (workbook; OutputStream outputStream = Files.newOutputStream(file)) {
+                Sheet sheet = workbook.createSheet(sheetName);
+                Row header = sheet.createRow(0);
+                header.createCell(0).setCellValue("Category");
+                header.createCell(1).setCellValue("Parent Category");
+                for (int i = 0; i < cells.length; i++) {
+                    if (cells[i] == null) {
+                        continue;
+                    }
+                    Row row = sheet.createRow(i + 1);
+                    for (int column = 0; column < 2; column++) {
+                        if (cells[i][column] != null) {
+                            row.createCell(column).setCellValue(cells[i][column]);
+                        }
+                    }
+                }
+                workbook.write(outputStream);
+            }
+            CategoryRows rows = new CategoryRows();
+            reader.read(file, rows);
+            return rows;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package telegram.bot.telegram_tt.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import telegram.bot.telegram_tt.repository.CategoryClosureRepository;
+import telegram.bot.telegram_tt.repository.CategoryJdbcRepository;
+import telegram.bot.telegram_tt.repository.CategorySnapshotRepository;
+import telegram.bot.telegram_tt.tree.CategoryTreeCodec;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a restore replaces the tree of the chat with the snapshot and refreshes the derived state.
+ */
+class CategorySnapshotServiceTest {
+
+    private static final Long CHAT_ID = 42L;
+
+    private final CategorySnapshotRepository categorySnapshotRepository = mock(CategorySnapshotRepository.class);
+    private final CategoryJdbcRepository categoryJdbcRepository = mock(CategoryJdbcRepository.class);
+    private final CategoryClosureRepository categoryClosureRepository = mock(CategoryClosureRepository.class);
+    private final CategoryTreeVersionService categoryTreeVersionService = mock(CategoryTreeVersionService.class);
+    private final CategoryTreeCache categoryTreeCache = mock(CategoryTreeCache.class);
+    private final CategorySnapshotService service = new CategorySnapshotService(categorySnapshotRepository,
+            categoryJdbcRepository, categoryClosureRepository, categoryTreeVersionService, categoryTreeCache, 10, 500);
+
+    @Test
+    void restoreReplacesTreeAndRebuildsClosure() {
+        CategoryTreeSnapshot tree = new CategoryTreeSnapshot.Builder(4)
+                .add(1, "Electronics", 0)
+                .add(2, "Phones", 1)
+                .add(3, "iPhone 15", 2)
+                .add(4, "Books", 0)
+                .build();
+        when(categorySnapshotRepository.findData(7L, CHAT_ID)).thenReturn(Optional.of(CategoryTreeCodec.encode(tree)));
+        when(categoryJdbcRepository.deleteByChatId(CHAT_ID)).thenReturn(12);
+        List<Long> ids = List.of(101L, 102L, 103L, 104L);
+        when(categoryJdbcRepository.allocateIds(4)).thenReturn(ids);
+
+        String response = service.restore(7L, CHAT_ID);
+
+        assertEquals("Snapshot #7 restored: 4 categories.", response);
+        InOrder order = inOrder(categoryJdbcRepository, categoryClosureRepository, categoryTreeVersionService,
+                categoryTreeCache);
+        order.verify(categoryJdbcRepository).deleteByChatId(CHAT_ID);
+        order.verify(categoryJdbcRepository).allocateIds(4);
+        order.verify(categoryJdbcRepository).insertTree(CHAT_ID, ids,
+                new String[]{"Electronics", "Phones", "iPhone 15", "Books"}, new int[]{-1, 0, 1, -1}, 500);
+        order.verify(categoryClosureRepository).rebuild(CHAT_ID);
+        order.verify(categoryTreeVersionService).bump(CHAT_ID);
+        order.verify(categoryTreeCache).invalidate(CHAT_ID);
+    }
+
+    @Test
+    void unknownSnapshotChangesNothing() {
+        when(categorySnapshotRepository.findData(anyLong(), eq(CHAT_ID))).thenReturn(Optional.empty());
+
+        String response = service.restore(7L, CHAT_ID);
+
+        assertEquals("Snapshot #7 does not exist. Use /restore to list the saved snapshots.", response);
+        verify(categoryJdbcRepository, never()).deleteByChatId(CHAT_ID);
+        verify(categoryJdbcRepository, never()).allocateIds(anyInt());
+        verify(categoryClosureRepository, never()).rebuild(CHAT_ID);
+    }
+
+    @Test
+    void corruptSnapshotChangesNothing() {
+        when(categorySnapshotRepository.findData(7L, CHAT_ID)).thenReturn(Optional.of(new byte[]{99}));
+
+        String response = service.restore(7L, CHAT_ID);
+
+        assertEquals("Snapshot #7 cannot be read.", response);
+        verify(categoryJdbcRepository, never()).deleteByChatId(CHAT_ID);
+        verify(categoryTreeVersionService, never()).bump(CHAT_ID);
+    }
+}
@@ -0,0 +1,138 @@
+package telegram.bot.telegram_tt.service;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.telegram_tt.service.ImportPlan.Move;
+import telegram.bot.telegram_tt.tree.CategoryTreeSnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the changes planned for uploaded files against a small tree:
+ * <pre>
+ * Electronics (1)
+ *     Phones (2)
+ *         iPhone (3)
+ *     Laptops (4)
+ * Books (5)
+ * </pre>
+ */
+class ImportPlannerTest {
+
+    private final ImportPlanner planner = new ImportPlanner();
+    private final CategoryTreeSnapshot tree = new CategoryTreeSnapshot.Builder(5)
+            .add(1, "Electronics", 0)
+            .add(2, "Phones", 1)
+            .add(3, "iPhone", 2)
+            .add(4, "Laptops", 1)
+            .add(5, "Books", 0)
+            .build();
+
+    @Test
+    void unchangedRowsAreNotPlanned() {
+        ImportPlan plan = planner.plan(rows("Electronics", "-", "Phones", "Electronics", "iPhone", "Phones"), tree, false);
+
+        assertTrue(plan.isEmpty());
+        assertEquals(3, plan.unchanged());
+    }
+
+    @Test
+    void newCategoriesAndMissingParentsAreCreated() {
+        ImportPlan plan = planner.plan(rows("Pixel", "Phones", "Novels", "Fiction"), tree, false);
+
+        assertEquals(List.of("Pixel", "Novels", "Fiction"), plan.inserts());
+        assertEquals(List.of(new Move("Pixel", "Phones", false), new Move("Novels", "Fiction", false)), plan.moves());
+        assertEquals(0, plan.reparented());
+    }
+
+    @Test
+    void existingCategoryMovesToAnotherParent() {
+        ImportPlan plan = planner.plan(rows("Phones", "Books"), tree, false);
+
+        assertEquals(List.of(new Move("Phones", "Books", true)), plan.moves());
+        assertEquals(1, plan.reparented());
+        assertTrue(plan.inserts().isEmpty());
+        assertTrue(plan.deletes().isEmpty());
+    }
+
+    @Test
+    void moveUnderOwnDescendantIsSkipped() {
+        ImportPlan plan = planner.plan(rows("Electronics", "iPhone", "Phones", "Phones"), tree, false);
+
+        assertTrue(plan.moves().isEmpty());
+        assertEquals(2, plan.skippedCycles());
+    }
+
+    @Test
+    void cycleWithinTheFileIsSkipped() {
+        // A and B are new; the second row would close the loop A -> B -> A
+        ImportPlan plan = planner.plan(rows("A", "B", "B", "A"), tree, false);
+
+        assertEquals(List.of("A", "B"), plan.inserts());
+        assertEquals(List.of(new Move("A", "B", false)), plan.moves());
+        assertEquals(1, plan.skippedCycles());
+    }
+
+    @Test
+    void syncDeletesMissingSubtree() {
+        ImportPlan plan = planner.plan(rows("Electronics", "-", "Laptops", "Electronics", "Books", "-"), tree, true);
+
+        // Phones and iPhone are not in the file
+        assertEquals(List.of(2L, 3L), plan.deletes());
+        assertTrue(plan.moves().isEmpty());
+        assertEquals(3, plan.unchanged());
+    }
+
+    @Test
+    void syncKeepsChildOfDeletedParentAsRoot() {
+        ImportPlan plan = planner.plan(rows("Electronics", "-", "iPhone", "Phones", "Books", "-"), tree, true);
+
+        // Phones is only mentioned as a parent, so it is kept; Laptops goes
+        assertEquals(List.of(4L), plan.deletes());
+
+        plan = planner.plan(rows("iPhone", "-", "Books", "-"), tree, true);
+        assertEquals(List.of(1L, 2L, 4L), plan.deletes());
+        assertEquals(List.of(new Move("iPhone", null, true)), plan.moves());
+    }
+
+    @Test
+    void emptyFileChangesNothing() {
+        ImportPlan plan = planner.plan(Map.of(), tree, false);
+
+        assertTrue(plan.isEmpty());
+        assertEquals(0, plan.rows());
+    }
+
+    @Test
+    void syncWithEmptyFileIsRefused() {
+        assertThrows(ImportRefusedException.class, () -> planner.plan(Map.of(), tree, true));
+    }
+
+    @Test
+    void syncDeletingEveryCategoryIsRefused() {
+        assertThrows(ImportRefusedException.class, () -> planner.plan(rows("Garden", "-"), tree, true));
+    }
+
+    @Test
+    void syncIntoEmptyTreeIsAllowed() {
+        CategoryTreeSnapshot empty = new CategoryTreeSnapshot.Builder(0).build();
+
+        ImportPlan plan = planner.plan(rows("Garden", "-"), empty, true);
+
+        assertEquals(List.of("Garden"), plan.inserts());
+        assertTrue(plan.deletes().isEmpty());
+    }
+
+    private static Map<String, String> rows(String... categoryAndParent) {
+        Map<String, String> rows = new LinkedHashMap<>();
+        for (int i = 0; i < categoryAndParent.length; i += 2) {
+            rows.put(categoryAndParent[i], categoryAndParent[i + 1]);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,100 @@
+package telegram.bot.telegram_tt.tree;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.telegram_tt.tree.CategoryTreeCodec.DecodedTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that snapshots keep the shape and names of a tree.
+ */
+class CategoryTreeCodecTest {
+
+    private static final int NODES = 100_000;
+
+    @Test
+    void largeTreeSurvivesRoundTrip() throws IOException {
+        // Chains of ten levels; names are unique within a chat, as the category table requires
+        CategoryTreeSnapshot.Builder builder = new CategoryTreeSnapshot.Builder(NODES);
+        for (int i = 0; i < NODES; i++) {
+            builder.add(i + 1, (i % 10 == 0 ? "Department " : "Shelf ") + (i + 1), i % 10);
+        }
+        CategoryTreeSnapshot tree = builder.build();
+
+        DecodedTree decoded = CategoryTreeCodec.decode(CategoryTreeCodec.encode(tree));
+
+        assertEquals(NODES, decoded.size());
+        int[] position = {0};
+        tree.depthFirst((node, depth) -> {
+            int index = position[0]++;
+            assertEquals(tree.name(node), decoded.names()[index]);
+            int parent = decoded.parents()[index];
+            assertEquals(tree.parent(node) == CategoryTreeSnapshot.NONE ? "-" : tree.name(tree.parent(node)),
+                    parent < 0 ? "-" : decoded.names()[parent]);
+            return true;
+        });
+    }
+
+    @Test
+    void namesInOrderAndEmptyTree() throws IOException {
+        CategoryTreeSnapshot tree = new CategoryTreeSnapshot.Builder(3)
+                .add(1, "Ünïcödé", 0)
+                .add(2, "Child", 1)
+                .add(3, "Another root", 0)
+                .build();
+        DecodedTree decoded = CategoryTreeCodec.decode(CategoryTreeCodec.encode(tree));
+        assertArrayEquals(new String[]{"Ünïcödé", "Child", "Another root"}, decoded.names());
+        assertArrayEquals(new int[]{-1, 0, -1}, decoded.parents());
+
+        DecodedTree empty = CategoryTreeCodec.decode(
+                CategoryTreeCodec.encode(new CategoryTreeSnapshot.Builder(0).build()));
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    void corruptDataIsRejected() {
+        byte[] data = CategoryTreeCodec.encode(new CategoryTreeSnapshot.Builder(1).add(1, "Root", 0).build());
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(new byte[0]));
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(new byte[]{99}));
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(Arrays.copyOf(data, data.length / 2)));
+    }
+
+    @Test
+    void corruptCountsAndLengthsAreRejected() {
+        // count, string count, then one length-prefixed name
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(-1, 0)));
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(1, -5)));
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(1, 2)));
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(1, 1, -7)));
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(1, 1, Integer.MAX_VALUE)));
+        // Claims far more categories than the data holds; must end in an IOException, not a huge allocation
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(Integer.MAX_VALUE, 1, 1, 'A', 1, 0)));
+        // Cut off right after the string table, before the flags
+        assertThrows(IOException.class, () -> CategoryTreeCodec.decode(deflated(1, 1, 1, 'A')));
+    }
+
+    /**
+     * Builds snapshot data from varints, the way encode writes them after the format byte.
+     */
+    private static byte[] deflated(int... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(1);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            for (int value : values) {
+                while ((value & ~0x7F) != 0) {
+                    out.write((value & 0x7F) | 0x80);
+                    value >>>= 7;
+                }
+                out.write(value);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
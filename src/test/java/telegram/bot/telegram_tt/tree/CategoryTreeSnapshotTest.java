@@ -0,0 +1,141 @@
+package telegram.bot.telegram_tt.tree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how a snapshot links the categories added to its builder and how it is traversed.
+ * <pre>
+ * Electronics
+ *     Phones
+ *         iPhone 15
+ *         Pixel 8
+ *     Laptops
+ * Books
+ *     Novels
+ * </pre>
+ */
+class CategoryTreeSnapshotTest {
+
+    private final CategoryTreeSnapshot tree = new CategoryTreeSnapshot.Builder(2)
+            .add(10, "Electronics", 0)
+            .add(11, "Phones", 1)
+            .add(12, "iPhone 15", 2)
+            .add(13, "Pixel 8", 2)
+            .add(14, "Laptops", 1)
+            .add(20, "Books", 0)
+            .add(21, "Novels", 1)
+            .build();
+
+    @Test
+    void builderLinksCategoriesInTheOrderTheyAreAdded() {
+        assertEquals(7, tree.size());
+        int electronics = tree.indexOf("Electronics");
+        int phones = tree.indexOf("Phones");
+        int books = tree.indexOf("Books");
+
+        assertEquals(electronics, tree.firstRoot());
+        assertEquals(books, tree.nextSibling(electronics));
+        assertEquals(CategoryTreeSnapshot.NONE, tree.nextSibling(books));
+        assertEquals(CategoryTreeSnapshot.NONE, tree.parent(electronics));
+        assertEquals(phones, tree.firstChild(electronics));
+        assertEquals(tree.indexOf("Laptops"), tree.nextSibling(phones));
+        assertEquals(tree.indexOf("Pixel 8"), tree.nextSibling(tree.indexOf("iPhone 15")));
+        assertEquals(phones, tree.parent(tree.indexOf("Pixel 8")));
+        assertEquals(books, tree.parent(tree.indexOf("Novels")));
+        assertEquals(CategoryTreeSnapshot.NONE, tree.firstChild(tree.indexOf("Laptops")));
+        assertEquals(13, tree.id(tree.indexOf("Pixel 8")));
+    }
+
+    @Test
+    void depthFirstVisitsEveryCategoryBeforeItsSubtree() {
+        assertEquals(List.of("Electronics:0", "Phones:1", "iPhone 15:2", "Pixel 8:2", "Laptops:1", "Books:0", "Novels:1"),
+                visitDepthFirst(tree, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void breadthFirstVisitsLevelByLevel() {
+        List<String> visited = new ArrayList<>();
+        tree.breadthFirst((node, depth) -> visited.add(tree.name(node) + ":" + depth));
+
+        assertEquals(List.of("Electronics:0", "Books:0", "Phones:1", "Laptops:1", "Novels:1", "iPhone 15:2", "Pixel 8:2"),
+                visited);
+    }
+
+    @Test
+    void visitorCanStopTheTraversal() {
+        assertEquals(List.of("Electronics:0", "Phones:1", "iPhone 15:2"), visitDepthFirst(tree, 3));
+
+        List<String> visited = new ArrayList<>();
+        tree.breadthFirst((node, depth) -> {
+            visited.add(tree.name(node));
+            return visited.size() < 2;
+        });
+        assertEquals(List.of("Electronics", "Books"), visited);
+    }
+
+    @Test
+    void deepChainIsTraversedWithoutRecursion() {
+        // Far deeper than a recursive traversal could go on the default thread stack
+        int depth = 200_000;
+        CategoryTreeSnapshot.Builder builder = new CategoryTreeSnapshot.Builder(depth);
+        for (int i = 0; i < depth; i++) {
+            builder.add(i + 1, "Level " + i, i);
+        }
+        CategoryTreeSnapshot chain = builder.add(depth + 1, "Second root", 0).build();
+
+        int[] visited = {0};
+        int[] deepest = {0};
+        chain.depthFirst((node, level) -> {
+            assertEquals(visited[0] == depth ? 0 : visited[0], level);
+            visited[0]++;
+            deepest[0] = Math.max(deepest[0], level);
+            return true;
+        });
+        assertEquals(depth + 1, visited[0]);
+        assertEquals(depth - 1, deepest[0]);
+
+        visited[0] = 0;
+        chain.breadthFirst((node, level) -> {
+            visited[0]++;
+            return true;
+        });
+        assertEquals(depth + 1, visited[0]);
+    }
+
+    @Test
+    void missingNamesAreNotFound() {
+        assertEquals(CategoryTreeSnapshot.NONE, tree.indexOf("Garden"));
+        assertFalse(tree.contains("Garden"));
+        assertFalse(tree.contains("phones"));
+        assertTrue(tree.contains("Phones"));
+    }
+
+    @Test
+    void emptyTreeHasNothingToVisit() {
+        CategoryTreeSnapshot empty = new CategoryTreeSnapshot.Builder(0).build();
+
+        assertTrue(empty.isEmpty());
+        assertEquals(CategoryTreeSnapshot.NONE, empty.firstRoot());
+        assertEquals(CategoryTreeSnapshot.NONE, empty.indexOf("Electronics"));
+        assertEquals(List.of(), visitDepthFirst(empty, Integer.MAX_VALUE));
+        empty.breadthFirst((node, depth) -> {
+            throw new AssertionError("Nothing should be visited");
+        });
+    }
+
+    private static List<String> visitDepthFirst(CategoryTreeSnapshot tree, int limit) {
+        List<String> visited = new ArrayList<>();
+        tree.depthFirst((node, depth) -> {
+            visited.add(tree.name(node) + ":" + depth);
+            return visited.size() < limit;
+        });
+        return visited;
+    }
+}
@@ -0,0 +1,116 @@
+package telegram.bot.telegram_tt.tree;
+
+import org.junit.jupiter.api.Test;
+import telegram.bot.telegram_tt.bot.OutboundScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that rendered trees are split into chunks that fit into one Telegram message.
+ */
+class ChunkedTreeWriterTest {
+
+    private static final int LIMIT = OutboundScheduler.MAX_MESSAGE_LENGTH;
+
+    @Test
+    void chunksAreFilledUpToTheLimitExactly() {
+        // "-   " + name + "\n" takes 128 characters, so 32 lines fill a chunk to exactly 4096
+        List<String> chunks = new ArrayList<>();
+        ChunkedTreeWriter writer = new ChunkedTreeWriter(LIMIT, 0, chunks::add);
+        for (int i = 0; i < 33; i++) {
+            assertTrue(writer.line(name(i, 123), 0));
+        }
+        writer.finish();
+
+        assertEquals(2, chunks.size());
+        assertEquals(LIMIT, chunks.get(0).length());
+        assertEquals(128, chunks.get(1).length());
+        assertTrue(chunks.get(1).startsWith("-   " + name(32, 123)));
+        assertEquals(2, writer.pageCount());
+    }
+
+    @Test
+    void linesAreNeverSplitBetweenChunks() {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        ChunkedTreeWriter writer = new ChunkedTreeWriter(LIMIT, 0, chunks::add);
+        for (int i = 0; i < 500; i++) {
+            int depth = i % 5;
+            String name = name(i, 15 + i % 40);
+            writer.line(name, depth);
+            expected.append("    ".repeat(depth)).append("-   ").append(name).append('\n');
+        }
+        writer.finish();
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= LIMIT, "Chunk of " + chunk.length() + " characters");
+            assertTrue(chunk.endsWith("\n"));
+        }
+        assertEquals(expected.toString(), String.join("", chunks));
+    }
+
+    @Test
+    void pageModeWritesOnlyThatChunkAndStops() {
+        List<String> all = new ArrayList<>();
+        ChunkedTreeWriter full = new ChunkedTreeWriter(LIMIT, 0, all::add);
+        for (int i = 0; i < 100; i++) {
+            full.line(name(i, 123), 0);
+        }
+        full.finish();
+        List<String> page = new ArrayList<>();
+        ChunkedTreeWriter paged = new ChunkedTreeWriter(LIMIT, 2, page::add);
+        int accepted = 0;
+        while (accepted < 100 && paged.line(name(accepted, 123), 0)) {
+            accepted++;
+        }
+        paged.finish();
+
+        assertEquals(4, all.size());
+        assertEquals(List.of(all.get(1)), page);
+        // The line that starts the third chunk stops the traversal
+        assertEquals(64, accepted);
+        assertTrue(paged.hasMorePages());
+        assertTrue(paged.hasWritten());
+    }
+
+    @Test
+    void pageBeyondTheEndWritesNothing() {
+        List<String> page = new ArrayList<>();
+        ChunkedTreeWriter writer = new ChunkedTreeWriter(LIMIT, 3, page::add);
+        for (int i = 0; i < 40; i++) {
+            writer.line(name(i, 123), 0);
+        }
+        writer.finish();
+
+        assertTrue(page.isEmpty());
+        assertFalse(writer.hasWritten());
+        assertFalse(writer.hasMorePages());
+        assertEquals(2, writer.pageCount());
+    }
+
+    @Test
+    void overlongLinesAreShortenedToFit() {
+        List<String> chunks = new ArrayList<>();
+        ChunkedTreeWriter writer = new ChunkedTreeWriter(LIMIT, 0, chunks::add);
+        writer.line("x".repeat(10_000), 0);
+        writer.line("y".repeat(10_000), 5_000);
+        writer.finish();
+
+        assertEquals(2, chunks.size());
+        for (String chunk : chunks) {
+            assertEquals(LIMIT, chunk.length());
+            assertTrue(chunk.endsWith("…\n"));
+        }
+    }
+
+    private static String name(int index, int length) {
+        String prefix = "Category " + index + " ";
+        return prefix + "x".repeat(length - prefix.length());
+    }
+}